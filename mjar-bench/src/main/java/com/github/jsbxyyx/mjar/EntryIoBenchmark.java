@@ -0,0 +1,96 @@
+package com.github.jsbxyyx.mjar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 单个条目的读取（解压）与 CRC 计算，对应原先的 readAllBytes / calculateCrc。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntryIoBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int size;
+
+    private byte[] data;
+    private MappedZipFile zip;
+    private MappedZipFile.Entry entry;
+    private File file;
+    private MappedZipFile mapped;
+    private MappedZipFile.Entry mappedEntry;
+
+    @Setup
+    public void setup() throws Exception {
+        // 一半随机、一半重复，压缩率接近普通 class 文件
+        data = new byte[size];
+        new Random(42).nextBytes(data);
+        for (int i = size / 2; i < size; i++) {
+            data[i] = (byte) (i % 31);
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+            zos.putNextEntry(new ZipEntry("data.bin"));
+            zos.write(data);
+            zos.closeEntry();
+        }
+        zip = MappedZipFile.wrap(ByteBuffer.wrap(baos.toByteArray()));
+        entry = zip.getEntry("data.bin");
+        file = File.createTempFile("mjar-bench-", ".zip");
+        Files.write(file.toPath(), baos.toByteArray());
+        mapped = MappedZipFile.open(file);
+        mappedEntry = mapped.getEntry("data.bin");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        mapped.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public byte[] readEntry() throws Exception {
+        return zip.read(entry);
+    }
+
+    @Benchmark
+    public byte[] readMappedEntry() throws Exception {
+        return mapped.read(mappedEntry);
+    }
+
+    @Benchmark
+    public long crc32() {
+        return ZipRecord.crc32(data);
+    }
+
+    @Benchmark
+    public int deflate() {
+        ZipRecord record = ZipRecord.deflated("data.bin", 0L, data, 6);
+        // 与 ZipWriter 写出后一样归还压缩缓冲区
+        BufferPool.release(record.data);
+        return record.length;
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.jsbxyyx.mjar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量处理多个归档时平台线程与虚拟线程（--exec=virtual）两种执行模式的比较。
+ * <p>
+ * 输出写入 LatencyOutputStream，模拟网络存储上每 64 KB 的写入延迟。平台线程模式按默认值同时处理 threads / 2 个归档，
+ * 嵌套 jar 在读取线程中依次重建；虚拟线程模式同时处理所有归档，每个嵌套 jar 也在自己的虚拟线程中重建。
+ * 两种模式下加密都在 threads 个工作线程中进行。须在 JDK 21+ 上运行，否则 virtual 回退为平台线程（setup 中输出提示）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutionModeBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String exec;
+
+    @Param({"8"})
+    public int archives;
+
+    @Param({"0", "500"})
+    public int latencyMicros;
+
+    @Param({"4"})
+    public int threads;
+
+    private File dir;
+    private final List<File> sources = new ArrayList<>();
+    private ExecutorService archiveThreads;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("mjar-exec").toFile();
+        for (int i = 0; i < archives; i++) {
+            // 大小不同的归档，依赖 jar 嵌套两层
+            File f = new File(dir, "app" + i + ".jar");
+            Files.write(f.toPath(), SyntheticJars.fatJar(500 + i * 100, 10, 100, 2));
+            sources.add(f);
+        }
+        Log.setLevel(Log.Level.QUIET);
+        Mjarencrypt4.setup(SyntheticJars.TARGET_PKG, new XorEncryptor(), threads);
+        if ("virtual".equals(exec)) {
+            archiveThreads = VirtualThreads.newExecutor("mjar-archive-");
+            if (archiveThreads == null || !Mjarencrypt4.useVirtualThreads(true)) {
+                System.out.println("Virtual threads need Java 21+, measuring platform threads (Java "
+                        + System.getProperty("java.version") + ")");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Mjarencrypt4.shutdown();
+        if (archiveThreads != null) archiveThreads.shutdownNow();
+        for (File f : sources) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public long batch() throws Exception {
+        int parallel = archiveThreads != null ? archives : Math.max(1, threads / 2);
+        long[] written = new long[1];
+        List<ArchiveBatch.Result> results = ArchiveBatch.run(sources, parallel, (source, output) -> {
+            LatencyOutputStream out = new LatencyOutputStream(latencyMicros);
+            try (MappedZipFile zip = MappedZipFile.open(source)) {
+                Mjarencrypt4.processLevel(zip, out, 0);
+            }
+            out.close();
+            synchronized (written) {
+                written[0] += out.count;
+            }
+        }, archiveThreads);
+        if (ArchiveBatch.failures(results) > 0) {
+            throw new IllegalStateException(ArchiveBatch.report(results));
+        }
+        return written[0];
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.jsbxyyx.mjar;
+
+import com.github.jsbxyyx.mjar.runtime.EncryptedIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EncryptedIndex 的查找开销：命中、未命中、带 CRC 校验的命中，以及 HashSet 作为对照。
+ * 每次调用轮流查询不同的类名，避免只测到同一个缓存行。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexLookupBenchmark {
+
+    @Param({"1000", "10000"})
+    public int classes;
+
+    private EncryptedIndex index;
+    private Set<String> hashSet;
+    private String[] hits;
+    private String[] misses;
+    private byte[] classBytes;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        String pkg = SyntheticJars.TARGET_PKG.replace('.', '/');
+        classBytes = SyntheticJars.classBytes(pkg + "/Sample");
+        EncryptedIndex.Builder builder = new EncryptedIndex.Builder();
+        hashSet = new HashSet<>();
+        hits = new String[classes];
+        misses = new String[classes];
+        for (int i = 0; i < classes; i++) {
+            String name = pkg + "/p" + (i % 50) + "/Class" + i;
+            String entry = "BOOT-INF/classes/" + name + ".class";
+            builder.expect(entry);
+            ZipRecord record = ZipRecord.stored(entry, 0L, classBytes);
+            builder.written(record.name, record.size, record.crc);
+            hashSet.add(name);
+            hits[i] = name;
+            misses[i] = "org/springframework/p" + (i % 50) + "/Class" + i;
+        }
+        index = EncryptedIndex.of(builder.toByteArray());
+        shuffle(hits);
+        shuffle(misses);
+    }
+
+    @Benchmark
+    public boolean indexHit() {
+        return index.contains(hits[next++ % classes]);
+    }
+
+    @Benchmark
+    public boolean indexMiss() {
+        return index.contains(misses[next++ % classes]);
+    }
+
+    @Benchmark
+    public boolean indexMatches() {
+        return index.matches(hits[next++ % classes], classBytes, 0, classBytes.length);
+    }
+
+    @Benchmark
+    public boolean hashSetHit() {
+        return hashSet.contains(hits[next++ % classes]);
+    }
+
+    private static void shuffle(String[] a) {
+        Random random = new Random(42);
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+}
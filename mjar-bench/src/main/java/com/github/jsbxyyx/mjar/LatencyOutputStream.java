@@ -0,0 +1,54 @@
+package com.github.jsbxyyx.mjar;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 模拟网络存储的输出：丢弃数据，每写满 64 KB 等待 latencyMicros 微秒，等待期间线程阻塞（虚拟线程会让出载体线程）。
+ */
+public class LatencyOutputStream extends NullOutputStream {
+    private static final int CHUNK = 64 * 1024;
+
+    private final long latencyNanos;
+    private long pending;
+
+    public LatencyOutputStream(long latencyMicros) {
+        this.latencyNanos = latencyMicros * 1000;
+    }
+
+    @Override
+    public void write(int b) {
+        super.write(b);
+        advance(1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        super.write(b, off, len);
+        advance(len);
+    }
+
+    @Override
+    public void close() {
+        if (pending > 0) stall(1);
+        pending = 0;
+    }
+
+    private void advance(int n) {
+        pending += n;
+        if (pending >= CHUNK) {
+            stall(pending / CHUNK);
+            pending %= CHUNK;
+        }
+    }
+
+    private void stall(long chunks) {
+        if (latencyNanos <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + chunks * latencyNanos;
+        long left;
+        while ((left = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(left);
+        }
+    }
+}
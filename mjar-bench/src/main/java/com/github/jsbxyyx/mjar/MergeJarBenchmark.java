@@ -0,0 +1,50 @@
+package com.github.jsbxyyx.mjar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mjarencrypt2.mergeJar 把 fat jar（含嵌套依赖）展开合并、加密并写出的耗时，输出丢弃。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergeJarBenchmark {
+
+    @Param({"1000", "10000"})
+    public int classes;
+
+    @Param({"20"})
+    public int libs;
+
+    private ByteBuffer jar;
+
+    @Setup
+    public void setup() throws Exception {
+        jar = ByteBuffer.wrap(SyntheticJars.fatJar(classes, libs, 200, 1));
+        Mjarencrypt2.setup(SyntheticJars.TARGET_PKG, new XorEncryptor());
+    }
+
+    @Benchmark
+    public long mergeJar() throws Exception {
+        MappedZipFile zip = MappedZipFile.wrap(jar);
+        NullOutputStream out = new NullOutputStream();
+        Mjarencrypt2.mergeJar(zip, true, zip.getManifest(), out);
+        return out.count;
+    }
+}
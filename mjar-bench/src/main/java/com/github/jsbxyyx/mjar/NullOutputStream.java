@@ -0,0 +1,20 @@
+package com.github.jsbxyyx.mjar;
+
+import java.io.OutputStream;
+
+/**
+ * 丢弃所有写入的数据，只统计字节数，避免基准测试受磁盘影响。
+ */
+public class NullOutputStream extends OutputStream {
+    public long count;
+
+    @Override
+    public void write(int b) {
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        count += len;
+    }
+}
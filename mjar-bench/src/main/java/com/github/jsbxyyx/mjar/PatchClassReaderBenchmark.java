@@ -0,0 +1,38 @@
+package com.github.jsbxyyx.mjar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对 ASM 自身的 ClassReader 打补丁（与 Spring 内置的 ClassReader 结构相同）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatchClassReaderBenchmark {
+
+    private byte[] classReader;
+
+    @Setup
+    public void setup() throws Exception {
+        classReader = SyntheticJars.classReaderBytes();
+    }
+
+    @Benchmark
+    public byte[] patchClassReader() {
+        return Mjarencrypt4.patchClassReader("org/objectweb/asm/ClassReader", classReader);
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.jsbxyyx.mjar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mjarencrypt4.processLevel 处理整个 fat jar 的耗时，覆盖不同大小、依赖数量与嵌套层数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessLevelBenchmark {
+
+    @Param({"1000", "10000"})
+    public int classes;
+
+    @Param({"0", "20"})
+    public int libs;
+
+    @Param({"1", "2"})
+    public int depth;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private ByteBuffer jar;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        jar = ByteBuffer.wrap(SyntheticJars.fatJar(classes, libs, 200, depth));
+        Mjarencrypt4.setup(SyntheticJars.TARGET_PKG, new XorEncryptor(), threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Mjarencrypt4.shutdown();
+    }
+
+    @Benchmark
+    public long processLevel() throws Exception {
+        NullOutputStream out = new NullOutputStream();
+        Mjarencrypt4.processLevel(MappedZipFile.wrap(jar), out, 0);
+        return out.count;
+    }
+}
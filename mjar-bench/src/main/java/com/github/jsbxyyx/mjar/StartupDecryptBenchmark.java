@@ -0,0 +1,184 @@
+package com.github.jsbxyyx.mjar;
+
+import com.github.jsbxyyx.mjar.runtime.AesDecryptor;
+import com.github.jsbxyyx.mjar.runtime.DecryptCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 加密 fat jar 的启动开销，比较有无 mjar-runtime 的 DecryptCache。
+ * <p>
+ * fat jar 由 processLevel 以 AES-GCM 加密目标包，ASM 的 ClassReader 按 --runtime-cache 打补丁后在独立的类加载器中加载，
+ * native maybeDecrypt 由 mjar-runtime 的 AesDecryptor 代替。每次调用模拟一次启动：新建缓存，
+ * 读取 reads 遍所有 class（组件扫描、条件评估、代理生成各读一遍），每次都从 jar 中读出新的字节数组并构造 ClassReader。
+ * cache 为 none 时不缓存，lru 为默认大小，soft 使用软引用，small 只能容纳约四分之一的加密 class。
+ * 最后一轮的解密次数、命中率与解密耗时在结束时输出。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StartupDecryptBenchmark {
+    private static final byte[] KEY = "mjar-bench-key-0".getBytes();
+
+    @Param({"2000"})
+    public int classes;
+
+    @Param({"1", "3"})
+    public int reads;
+
+    @Param({"none", "lru", "soft", "small"})
+    public String cache;
+
+    private final List<MappedZipFile> zips = new ArrayList<>();
+    private final List<MappedZipFile.Entry> entries = new ArrayList<>();
+    private long encryptedBytes;
+    private Constructor<?> classReader;
+    private Method getClassName;
+    private DecryptCache current;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Mjarencrypt4.setup(SyntheticJars.TARGET_PKG, new AesEncryptor(true, KEY), 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            Mjarencrypt4.processLevel(MappedZipFile.wrap(ByteBuffer.wrap(SyntheticJars.fatJar(classes, 4, 500, 1))), out, 0);
+        } finally {
+            Mjarencrypt4.shutdown();
+        }
+        MappedZipFile app = MappedZipFile.wrap(ByteBuffer.wrap(out.toByteArray()));
+        collect(app);
+        for (MappedZipFile.Entry entry : app.entries()) {
+            if (entry.getName().startsWith("BOOT-INF/lib/")) {
+                collect(MappedZipFile.wrap(app.rawData(entry)));
+            }
+        }
+
+        byte[] patched = Mjarencrypt4.patchClassReader("org/objectweb/asm/ClassReader", SyntheticJars.classReaderBytes(), true);
+        Class<?> type = new PatchedAsmLoader(patched).loadClass("org.objectweb.asm.ClassReader");
+        classReader = type.getConstructor(byte[].class);
+        getClassName = type.getMethod("getClassName");
+        DecryptCache.setDecryptor(new AesDecryptor(true, KEY));
+    }
+
+    private void collect(MappedZipFile zip) throws IOException {
+        for (MappedZipFile.Entry entry : zip.entries()) {
+            if (entry.getName().endsWith(".class") && !entry.getName().endsWith("/asm/ClassReader.class")) {
+                zips.add(zip);
+                entries.add(entry);
+                if (entry.getName().startsWith("BOOT-INF/classes/")) {
+                    encryptedBytes += entry.getSize();
+                }
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void newCache() {
+        switch (cache) {
+            case "none":
+                current = new DecryptCache(0, false);
+                break;
+            case "lru":
+                current = new DecryptCache(DecryptCache.DEFAULT_SIZE, false);
+                break;
+            case "soft":
+                current = new DecryptCache(DecryptCache.DEFAULT_SIZE, true);
+                break;
+            case "small":
+                // 加密字节与明文大致等长，每个条目另有约 128 字节开销
+                current = new DecryptCache((encryptedBytes * 2 + classes * 128L) / 4, false);
+                break;
+            default:
+                throw new IllegalArgumentException(cache);
+        }
+        DecryptCache.install(current);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println();
+        System.out.println("cache=" + cache + ", reads=" + reads + ": " + current.report());
+        DecryptCache.setDecryptor(null);
+    }
+
+    @Benchmark
+    public long startup() throws Exception {
+        long n = 0;
+        for (int r = 0; r < reads; r++) {
+            for (int i = 0; i < entries.size(); i++) {
+                Object reader = classReader.newInstance((Object) zips.get(i).read(entries.get(i)));
+                n += ((String) getClassName.invoke(reader)).length();
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 子优先加载 org.objectweb.asm 下的类，使其链接到打过补丁的 ClassReader；
+     * mjar-runtime 仍由父加载器提供，与基准共用同一个 DecryptCache。
+     */
+    static final class PatchedAsmLoader extends ClassLoader {
+        private final byte[] classReader;
+
+        PatchedAsmLoader(byte[] classReader) {
+            super(StartupDecryptBenchmark.class.getClassLoader());
+            this.classReader = classReader;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith("org.objectweb.asm.")) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    byte[] b = "org.objectweb.asm.ClassReader".equals(name) ? classReader : bytesOf(name);
+                    c = defineClass(name, b, 0, b.length);
+                }
+                return c;
+            }
+        }
+
+        private byte[] bytesOf(String name) throws ClassNotFoundException {
+            try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                if (in == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    out.write(buf, 0, n);
+                }
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.jsbxyyx.mjar;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * 生成基准测试用的 Spring Boot 风格 fat jar：
+ * BOOT-INF/classes 下为目标包 com/example/app 的 class，BOOT-INF/lib 下为 STORED 的依赖 jar。
+ */
+public final class SyntheticJars {
+    public static final String TARGET_PKG = "com.example.app";
+
+    private SyntheticJars() {
+    }
+
+    /**
+     * @param classCount 目标包下的 class 数
+     * @param libCount   依赖 jar 数，第一个依赖包含 ASM 的 ClassReader，会被打补丁
+     * @param libClasses 每个依赖 jar 中的 class 数
+     * @param depth      依赖 jar 的嵌套层数，1 表示 fat jar 中直接包含依赖
+     */
+    public static byte[] fatJar(int classCount, int libCount, int libClasses, int depth) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (JarOutputStream jos = new JarOutputStream(baos, manifest())) {
+            for (int i = 0; i < classCount; i++) {
+                String name = "com/example/app/C" + i;
+                put(jos, "BOOT-INF/classes/" + name + ".class", classBytes(name), false);
+            }
+            put(jos, "BOOT-INF/classes/application.properties", "server.port=8080\n".getBytes("UTF-8"), false);
+            for (int i = 0; i < libCount; i++) {
+                put(jos, "BOOT-INF/lib/lib" + i + ".jar", lib(i, libClasses, depth, i == 0), true);
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    public static byte[] classReaderBytes() throws IOException {
+        try (InputStream is = ClassWriter.class.getResourceAsStream("/org/objectweb/asm/ClassReader.class")) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = is.read(buf)) != -1) {
+                baos.write(buf, 0, n);
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    private static byte[] lib(int index, int classes, int depth, boolean withClassReader) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (JarOutputStream jos = new JarOutputStream(baos, new Manifest())) {
+            for (int j = 0; j < classes; j++) {
+                String name = "org/lib" + index + "/d" + depth + "/X" + j;
+                put(jos, name + ".class", classBytes(name), false);
+            }
+            if (withClassReader) {
+                put(jos, "org/objectweb/asm/ClassReader.class", classReaderBytes(), false);
+            }
+            if (depth > 1) {
+                put(jos, "lib/nested" + index + ".jar", lib(index, classes, depth - 1, false), true);
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    static byte[] classBytes(String internalName) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, internalName, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        for (int m = 0; m < 8; m++) {
+            mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "m" + m, "(I)Ljava/lang/String;", null, null);
+            mv.visitCode();
+            mv.visitLdcInsn(internalName + "#" + m);
+            mv.visitInsn(Opcodes.ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static Manifest manifest() {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.put(Attributes.Name.MAIN_CLASS, "org.springframework.boot.loader.JarLauncher");
+        attributes.putValue("Start-Class", "com.example.app.C0");
+        return manifest;
+    }
+
+    private static void put(JarOutputStream jos, String name, byte[] data, boolean stored) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc.getValue());
+        }
+        jos.putNextEntry(entry);
+        jos.write(data);
+        jos.closeEntry();
+    }
+}
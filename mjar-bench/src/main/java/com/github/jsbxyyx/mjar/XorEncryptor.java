@@ -0,0 +1,16 @@
+package com.github.jsbxyyx.mjar;
+
+/**
+ * 基准测试用的纯 Java 加密器，代替 libmjar，耗时只与数据量线性相关。
+ */
+public class XorEncryptor implements Encryptor {
+
+    @Override
+    public byte[] encrypt(byte[] bytes) {
+        byte[] out = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i] = (byte) (bytes[i] ^ 0x5A);
+        }
+        return out;
+    }
+}
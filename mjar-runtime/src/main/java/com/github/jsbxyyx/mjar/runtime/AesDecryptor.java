@@ -0,0 +1,110 @@
+package com.github.jsbxyyx.mjar.runtime;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+
+/**
+ * --encryptor=aes-gcm / aes-ctr 的 Java 解密器，代替 native maybeDecrypt：输入为 IV 在前、密文在后
+ * （GCM 为 12 字节 nonce + 密文 + 16 字节认证标签，CTR 为 16 字节计数器初值 + 密文）。
+ * 以 0xCAFEBABE 开头的明文 class 原样返回；GCM 认证失败、或 CTR 解密结果不是 class 时也原样返回，视为未加密。
+ * <p>
+ * 只经由 {@link DecryptCache} 调用，因此加密时需要 --runtime-cache；启动时指定系统属性
+ * {@value DecryptCache#DECRYPTOR_PROPERTY}=aes-gcm（或 aes-ctr），密钥取自系统属性或环境变量 {@value #KEY_PROPERTY}，
+ * 与加密时相同。每个线程持有自己的 {@link Cipher}。
+ */
+public final class AesDecryptor implements Decryptor {
+    public static final String KEY_PROPERTY = "MJAR_AES_KEY";
+    private static final int GCM_NONCE_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+    private static final int CTR_IV_LENGTH = 16;
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+
+    private final boolean gcm;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Cipher> cipher;
+
+    public AesDecryptor(boolean gcm, byte[] key) {
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("AES key must be 16, 24 or 32 bytes, got " + key.length);
+        }
+        this.gcm = gcm;
+        this.key = new SecretKeySpec(key, "AES");
+        String transformation = gcm ? "AES/GCM/NoPadding" : "AES/CTR/NoPadding";
+        this.cipher = ThreadLocal.withInitial(() -> {
+            try {
+                return Cipher.getInstance(transformation);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    /**
+     * 按 {@value DecryptCache#DECRYPTOR_PROPERTY} 创建解密器：未设置或为 native 时返回 null，即使用 native maybeDecrypt。
+     */
+    static Decryptor fromSystemProperties() {
+        String name = System.getProperty(DecryptCache.DECRYPTOR_PROPERTY);
+        if (name == null || name.isEmpty() || "native".equals(name)) {
+            return null;
+        }
+        if ("aes-gcm".equals(name) || "aes-ctr".equals(name)) {
+            return new AesDecryptor("aes-gcm".equals(name), configuredKey());
+        }
+        throw new IllegalStateException("Unknown " + DecryptCache.DECRYPTOR_PROPERTY + ": " + name);
+    }
+
+    @Override
+    public byte[] maybeDecrypt(byte[] b, int off) {
+        int len = b.length - off;
+        if (len >= 4 && readInt(b, off) == CLASS_MAGIC) {
+            return b;
+        }
+        int ivLength = gcm ? GCM_NONCE_LENGTH : CTR_IV_LENGTH;
+        if (len < ivLength + (gcm ? GCM_TAG_BITS / 8 : 4)) {
+            return b;
+        }
+        Cipher c = cipher.get();
+        try {
+            if (gcm) {
+                c.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, b, off, ivLength));
+            } else {
+                c.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(b, off, ivLength));
+            }
+            byte[] out = c.doFinal(b, off + ivLength, len - ivLength);
+            // CTR 没有认证：只有解密出 class 时才认为输入是加密的
+            return gcm || readInt(out, 0) == CLASS_MAGIC ? out : b;
+        } catch (AEADBadTagException e) {
+            return b;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return (b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16 | (b[off + 2] & 0xFF) << 8 | (b[off + 3] & 0xFF);
+    }
+
+    /**
+     * 读取 {@value #KEY_PROPERTY}：先查系统属性，再查环境变量；16/24/32 字节，十六进制或 Base64。
+     */
+    public static byte[] configuredKey() {
+        String value = System.getProperty(KEY_PROPERTY, System.getenv(KEY_PROPERTY));
+        if (value == null || value.isEmpty()) {
+            throw new IllegalStateException(KEY_PROPERTY + " is not set (system property or environment variable)");
+        }
+        value = value.trim();
+        if (value.matches("[0-9a-fA-F]+") && (value.length() == 32 || value.length() == 48 || value.length() == 64)) {
+            byte[] key = new byte[value.length() / 2];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = (byte) Integer.parseInt(value.substring(i * 2, i * 2 + 2), 16);
+            }
+            return key;
+        }
+        return Base64.getDecoder().decode(value);
+    }
+}
@@ -0,0 +1,371 @@
+package com.github.jsbxyyx.mjar.runtime;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 解密结果的有界缓存，位于补丁后的 ClassReader 与 native maybeDecrypt 之间（加密时使用 --runtime-cache）。
+ * <p>
+ * Spring 启动时同一个 class 会被读取多次（组件扫描、条件评估、代理生成各读一遍资源），每次都是新的字节数组，
+ * 因此按内容缓存：键为加密字节的 64 位哈希，命中后再逐字节比较，哈希冲突不会返回错误的结果。
+ * ClassReader(byte[]) 依次经过 ([BII) 与 ([BIZ) 两个构造函数，每次构造调用两次 maybeDecrypt，
+ * 第二次传入的正是第一次返回的明文，按引用识别后直接返回，不再调用 native。
+ * <p>
+ * 缓存的总大小（加密字节 + 明文字节）有上限，超出时淘汰最久未使用的条目；可选用软引用保存明文，内存紧张时由 GC 回收。
+ * 缓存中保存私有副本，每次命中返回新的副本，调用方修改返回的数组不影响缓存。
+ * 以 0xCAFEBABE 开头的明文 class 不进缓存，直接交给 native 判断。
+ * <p>
+ * 系统属性：mjar.decrypt.cache（false 关闭缓存）、mjar.decrypt.cache.size（字节数，可带 K/M/G 后缀，默认 64M）、
+ * mjar.decrypt.cache.soft（true 时使用软引用）、mjar.decrypt.cache.stats（true 时退出前向 stderr 输出统计）。
+ * mjar.warmup=true 时第一次调用 maybeDecrypt 即开始 {@link Warmup}。
+ * mjar.decryptor=aes-gcm（或 aes-ctr）时用 {@link AesDecryptor} 代替 native maybeDecrypt，解密 --encryptor=aes-* 加密的 class。
+ */
+public final class DecryptCache {
+    public static final String ENABLED_PROPERTY = "mjar.decrypt.cache";
+    public static final String SIZE_PROPERTY = "mjar.decrypt.cache.size";
+    public static final String SOFT_PROPERTY = "mjar.decrypt.cache.soft";
+    public static final String STATS_PROPERTY = "mjar.decrypt.cache.stats";
+    public static final String DECRYPTOR_PROPERTY = "mjar.decryptor";
+    public static final long DEFAULT_SIZE = 64L << 20;
+    // 每个条目在两份字节之外的估算开销：键、数组头与链表节点
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+
+    // 补丁后的 ClassReader 中的 native maybeDecrypt，按 ClassReader 类缓存
+    private static final ClassValue<Decryptor> NATIVE = new ClassValue<Decryptor>() {
+        @Override
+        protected Decryptor computeValue(Class<?> owner) {
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.publicLookup().findStatic(owner, "maybeDecrypt",
+                        MethodType.methodType(byte[].class, byte[].class, int.class));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("No maybeDecrypt in " + owner.getName(), e);
+            }
+            return (b, off) -> {
+                try {
+                    return (byte[]) handle.invokeExact(b, off);
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new IllegalStateException(t);
+                }
+            };
+        }
+    };
+
+    private static volatile DecryptCache shared = fromSystemProperties();
+    // 不为 null 时代替 native maybeDecrypt：mjar.decryptor 指定的 Java 解密器，或测试与基准中设置的解密器
+    private static volatile Decryptor override = AesDecryptor.fromSystemProperties();
+    private static final AtomicBoolean warmupPending = new AtomicBoolean(Boolean.getBoolean(Warmup.PROPERTY));
+    private static volatile Warmup warmup;
+
+    private final long maxBytes;
+    private final boolean soft;
+    // 访问顺序，最久未使用的在前；值为 byte[] 或 SoftValue
+    private final LinkedHashMap<Key, Object> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final ReferenceQueue<byte[]> cleared = new ReferenceQueue<>();
+    private long bytes;
+    // 当前线程最近一次返回的明文，紧接着的内层构造函数会原样传回
+    private final ThreadLocal<byte[]> lastOutput = new ThreadLocal<>();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder plain = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder decrypts = new LongAdder();
+    private final LongAdder decryptNanos = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes 缓存的总大小，<= 0 时不缓存，每次都调用 decryptor
+     * @param soft     是否用软引用保存明文
+     */
+    public DecryptCache(long maxBytes, boolean soft) {
+        this.maxBytes = maxBytes;
+        this.soft = soft;
+    }
+
+    /**
+     * 补丁后的 ClassReader 构造函数开头调用的方法，owner 为 ClassReader 类本身。
+     */
+    public static byte[] maybeDecrypt(byte[] b, int off, Class<?> owner) {
+        if (warmupPending.get() && warmupPending.compareAndSet(true, false)) {
+            // ClassReader 与应用的 class 通常由同一个加载器加载（如 Spring Boot 的 LaunchedURLClassLoader）
+            ClassLoader loader = owner.getClassLoader();
+            warmup = Warmup.start(loader != null ? loader : Thread.currentThread().getContextClassLoader(), owner);
+        }
+        Decryptor d = override;
+        return shared.decrypt(b, off, d != null ? d : NATIVE.get(owner));
+    }
+
+    public static DecryptCache shared() {
+        return shared;
+    }
+
+    /**
+     * mjar.warmup=true 时自动开始的预热，尚未开始时返回 null。
+     */
+    public static Warmup warmup() {
+        return warmup;
+    }
+
+    /**
+     * 替换共用的缓存，例如在代码中指定大小，或在基准中比较不同配置。
+     */
+    public static void install(DecryptCache cache) {
+        shared = cache;
+    }
+
+    /**
+     * 用 decryptor 代替 native maybeDecrypt，传入 null 恢复。
+     */
+    public static void setDecryptor(Decryptor decryptor) {
+        override = decryptor;
+    }
+
+    private static DecryptCache fromSystemProperties() {
+        long size = "false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY)) ? 0
+                : parseSize(System.getProperty(SIZE_PROPERTY), DEFAULT_SIZE);
+        DecryptCache cache = new DecryptCache(size, Boolean.getBoolean(SOFT_PROPERTY));
+        if (Boolean.getBoolean(STATS_PROPERTY)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                System.err.println(shared.report());
+                if (warmup != null) System.err.println(warmup.report());
+            }, "mjar-decrypt-cache-stats"));
+        }
+        return cache;
+    }
+
+    private static long parseSize(String value, long defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        String v = value.trim().toUpperCase();
+        long unit = 1;
+        if (v.endsWith("K")) {
+            unit = 1L << 10;
+        } else if (v.endsWith("M")) {
+            unit = 1L << 20;
+        } else if (v.endsWith("G")) {
+            unit = 1L << 30;
+        }
+        if (unit != 1) v = v.substring(0, v.length() - 1);
+        return Long.parseLong(v) * unit;
+    }
+
+    /**
+     * 返回 b 从 off 开始的内容解密后的字节，未缓存时调用 decryptor 并缓存其结果。
+     */
+    public byte[] decrypt(byte[] b, int off, Decryptor decryptor) {
+        calls.increment();
+        if (maxBytes <= 0) {
+            return call(decryptor, b, off);
+        }
+        if (b == lastOutput.get()) {
+            lastOutput.remove();
+            reused.increment();
+            return b;
+        }
+        if (isClassFile(b, off)) {
+            plain.increment();
+            return call(decryptor, b, off);
+        }
+        int len = b.length - off;
+        Key probe = new Key(b, off, len, hash(b, off, len));
+        byte[] cached = get(probe);
+        if (cached != null) {
+            hits.increment();
+            byte[] out = cached.clone();
+            lastOutput.set(out);
+            return out;
+        }
+        misses.increment();
+        byte[] out = call(decryptor, b, off);
+        if (out != b) {
+            put(new Key(Arrays.copyOfRange(b, off, b.length), 0, len, probe.hash), out.clone());
+            lastOutput.set(out);
+        }
+        return out;
+    }
+
+    private byte[] call(Decryptor decryptor, byte[] b, int off) {
+        long t = System.nanoTime();
+        try {
+            return decryptor.maybeDecrypt(b, off);
+        } finally {
+            decryptNanos.add(System.nanoTime() - t);
+            decrypts.increment();
+        }
+    }
+
+    private static boolean isClassFile(byte[] b, int off) {
+        return b.length - off >= 4 && ((b[off] & 0xFF) << 24 | (b[off + 1] & 0xFF) << 16
+                | (b[off + 2] & 0xFF) << 8 | (b[off + 3] & 0xFF)) == CLASS_MAGIC;
+    }
+
+    static long hash(byte[] b, int off, int len) {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        long h = len * 0x9E3779B97F4A7C15L;
+        while (buffer.remaining() >= 8) {
+            h = (h ^ buffer.getLong()) * 0x100000001B3L;
+            h ^= h >>> 32;
+        }
+        while (buffer.hasRemaining()) {
+            h = (h ^ buffer.get()) * 0x100000001B3L;
+        }
+        return h ^ (h >>> 29);
+    }
+
+    private synchronized byte[] get(Key key) {
+        Object value = entries.get(key);
+        if (value instanceof SoftValue) {
+            byte[] data = ((SoftValue) value).get();
+            if (data == null && entries.remove(key, value)) {
+                bytes -= ((SoftValue) value).key.size;
+            }
+            return data;
+        }
+        return (byte[]) value;
+    }
+
+    private synchronized void put(Key key, byte[] data) {
+        key.size = key.len + data.length + ENTRY_OVERHEAD;
+        if (key.size > maxBytes || entries.containsKey(key)) {
+            // 过大的条目不缓存；并发未命中时由先完成的线程写入
+            return;
+        }
+        purge();
+        entries.put(key, soft ? new SoftValue(data, key, cleared) : data);
+        bytes += key.size;
+        Iterator<Map.Entry<Key, Object>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Key eldest = it.next().getKey();
+            it.remove();
+            bytes -= eldest.size;
+            evictions.increment();
+        }
+    }
+
+    // 移除已被 GC 回收的软引用条目
+    private void purge() {
+        Reference<? extends byte[]> ref;
+        while ((ref = cleared.poll()) != null) {
+            SoftValue value = (SoftValue) ref;
+            if (entries.remove(value.key, value)) {
+                bytes -= value.key.size;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+        while (cleared.poll() != null) {
+            // 丢弃已回收的引用
+        }
+    }
+
+    public long calls() {
+        return calls.sum();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * 实际调用 decryptor 的次数。
+     */
+    public long decrypts() {
+        return decrypts.sum();
+    }
+
+    public long decryptNanos() {
+        return decryptNanos.sum();
+    }
+
+    /**
+     * 加密 class 的命中率，不含按引用识别的明文与未加密的 class。
+     */
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public String report() {
+        return String.format("mjar decrypt cache: calls=%d, hits=%d, misses=%d, hit rate=%.1f%%, reused=%d, plain=%d, "
+                        + "decrypts=%d (%.1f ms), entries=%d, bytes=%d/%d%s, evictions=%d",
+                calls(), hits(), misses(), hitRate() * 100, reused.sum(), plain.sum(), decrypts(),
+                decryptNanos() / 1e6, size(), bytes(), Math.max(maxBytes, 0), soft ? " (soft)" : "", evictions.sum());
+    }
+
+    private static final class Key {
+        final byte[] data;
+        final int off;
+        final int len;
+        final long hash;
+        // 写入缓存时计算的条目大小
+        long size;
+
+        Key(byte[] data, int off, int len, long hash) {
+            this.data = data;
+            this.off = off;
+            this.len = len;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return hash == k.hash && len == k.len
+                    && ByteBuffer.wrap(data, off, len).equals(ByteBuffer.wrap(k.data, k.off, k.len));
+        }
+    }
+
+    private static final class SoftValue extends SoftReference<byte[]> {
+        final Key key;
+
+        SoftValue(byte[] data, Key key, ReferenceQueue<byte[]> queue) {
+            super(data, queue);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.github.jsbxyyx.mjar.runtime;
+
+/**
+ * 与补丁注入 ClassReader 的 native maybeDecrypt([BI)[B 约定相同：
+ * b 从 off 开始为加密的 class 时返回解密后的字节，否则原样返回 b。
+ */
+public interface Decryptor {
+
+    byte[] maybeDecrypt(byte[] b, int off);
+}
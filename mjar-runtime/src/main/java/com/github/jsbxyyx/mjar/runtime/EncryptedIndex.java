@@ -0,0 +1,334 @@
+package com.github.jsbxyyx.mjar.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * 归档中已加密 class 的索引（--index），写在每个含加密 class 的归档的 {@link #NAME} 中，
+ * 运行时据此判断某个类是否被加密，不必探测字节内容；没有预热列表时 {@link Warmup} 按它预热所有加密 class。
+ * 加密工具用 {@link Builder} 写出，运行时只需要本类，不依赖 ASM。
+ * <p>
+ * 格式（大端）：魔数 "MJIX"、版本 u2、保留 u2、条目数 u4、散列表槽数 u4；然后每个条目依次为名称偏移 u4、
+ * 名称的 {@link String#hashCode()} u4、加密后的大小 u4、加密后数据的 CRC32 u4；接着是开放寻址（线性探测）的散列表，
+ * 每个槽为条目下标 + 1（0 表示空）；最后是所有名称的 UTF-8 字节。
+ * <p>
+ * 名称为内部形式的类名（如 {@code com/example/Foo}，已去掉 BOOT-INF/classes/ 等前缀与 .class 后缀），
+ * 按 UTF-8 字节序排列。查找时用调用方字符串已缓存的 hashCode 定位槽位，只对散列值相同的条目比较一次名称；
+ * 比较直接在 UTF-8 字节上进行，不需要解析成字符串，也不分配对象。
+ */
+public final class EncryptedIndex {
+    public static final String NAME = "META-INF/mjar/encrypted.idx";
+    private static final int MAGIC = 0x4D4A4958;
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    private static final int RECORD = 16;
+    private static final String[] CLASS_ROOTS = {"BOOT-INF/classes/", "WEB-INF/classes/"};
+
+    private final byte[] data;
+    private final int count;
+    private final int tableStart;
+    private final int tableMask;
+    private final int namesStart;
+
+    private EncryptedIndex(byte[] data) throws ZipException {
+        if (data.length < HEADER || getInt(data, 0) != MAGIC) {
+            throw new ZipException("not an mjar index");
+        }
+        if ((getInt(data, 4) >>> 16) != VERSION) {
+            throw new ZipException("unsupported mjar index version " + (getInt(data, 4) >>> 16));
+        }
+        this.data = data;
+        this.count = getInt(data, 8);
+        int slots = getInt(data, 12);
+        this.tableStart = HEADER + count * RECORD;
+        this.tableMask = slots - 1;
+        this.namesStart = tableStart + slots * 4;
+        if (count < 0 || slots <= count || Integer.bitCount(slots) != 1 || namesStart > data.length) {
+            throw new ZipException("truncated mjar index");
+        }
+    }
+
+    public static EncryptedIndex of(byte[] data) throws ZipException {
+        return new EncryptedIndex(data);
+    }
+
+    public static EncryptedIndex read(InputStream in) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] b = new byte[8 * 1024];
+        int n;
+        while ((n = in.read(b)) != -1) {
+            baos.write(b, 0, n);
+        }
+        return new EncryptedIndex(baos.toByteArray());
+    }
+
+    /**
+     * 从 classloader 中读取索引，没有时返回 null。有多个同名资源时只读取第一个，全部读取见 {@link #loadAll(ClassLoader)}。
+     */
+    public static EncryptedIndex load(ClassLoader loader) throws IOException {
+        try (InputStream in = loader.getResourceAsStream(NAME)) {
+            return in == null ? null : read(in);
+        }
+    }
+
+    /**
+     * 读取 classloader 中所有的索引（fat jar 自身与 BOOT-INF/lib 下的每个嵌套 jar 各有一份），没有时返回空列表。
+     */
+    public static List<EncryptedIndex> loadAll(ClassLoader loader) throws IOException {
+        List<EncryptedIndex> indexes = new ArrayList<>();
+        Enumeration<URL> urls = loader.getResources(NAME);
+        while (urls.hasMoreElements()) {
+            try (InputStream in = urls.nextElement().openStream()) {
+                indexes.add(read(in));
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * className 是否在 indexes 中的任意一个索引里。
+     */
+    public static boolean contains(List<EncryptedIndex> indexes, String className) {
+        for (int i = 0; i < indexes.size(); i++) {
+            if (indexes.get(i).contains(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 查找内部形式的类名，返回条目下标（条目按名称排序），不存在时返回 -1。
+     */
+    public int indexOf(String className) {
+        int hash = className.hashCode();
+        for (int slot = mix(hash) & tableMask; ; slot = (slot + 1) & tableMask) {
+            int i = getInt(data, tableStart + slot * 4) - 1;
+            if (i < 0) {
+                return -1;
+            }
+            if (getInt(data, HEADER + i * RECORD + 4) == hash && compare(i, className) == 0) {
+                return i;
+            }
+        }
+    }
+
+    public boolean contains(String className) {
+        return indexOf(className) >= 0;
+    }
+
+    public String name(int i) {
+        int start = nameStart(i);
+        return new String(data, start, nameEnd(i) - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 加密后的大小。
+     */
+    public int encryptedSize(int i) {
+        return getInt(data, HEADER + i * RECORD + 8);
+    }
+
+    /**
+     * 加密后数据的 CRC32。
+     */
+    public long encryptedCrc(int i) {
+        return getInt(data, HEADER + i * RECORD + 12) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * className 在索引中，且 b[off, off + len) 的大小与 CRC32 与索引一致，即这正是加密时写出的数据。
+     */
+    public boolean matches(String className, byte[] b, int off, int len) {
+        int i = indexOf(className);
+        if (i < 0 || encryptedSize(i) != len) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(b, off, len);
+        return crc.getValue() == encryptedCrc(i);
+    }
+
+    /**
+     * 条目名转换为索引中的类名：去掉 BOOT-INF/classes/、WEB-INF/classes/ 前缀与 .class 后缀。
+     */
+    public static String className(String entryName) {
+        String name = entryName;
+        for (String root : CLASS_ROOTS) {
+            if (name.startsWith(root)) {
+                name = name.substring(root.length());
+                break;
+            }
+        }
+        return name.endsWith(".class") ? name.substring(0, name.length() - ".class".length()) : name;
+    }
+
+    private int nameStart(int i) {
+        return namesStart + getInt(data, HEADER + i * RECORD);
+    }
+
+    private int nameEnd(int i) {
+        return i + 1 < count ? nameStart(i + 1) : data.length;
+    }
+
+    /**
+     * 按 UTF-8 字节序比较第 i 个名称与 s，边比较边编码 s，不分配对象。
+     */
+    private int compare(int i, String s) {
+        int p = nameStart(i);
+        int end = nameEnd(i);
+        int k = 0;
+        int n = s.length();
+        while (k < n) {
+            char ch = s.charAt(k);
+            if (ch < 0x80) {
+                // ASCII 只占一个字节
+                if (p == end) {
+                    return -1;
+                }
+                int actual = data[p++] & 0xFF;
+                if (actual != ch) {
+                    return actual - ch;
+                }
+                k++;
+                continue;
+            }
+            int cp = s.codePointAt(k);
+            k += Character.charCount(cp);
+            int len = cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+            for (int j = len - 1; j >= 0; j--) {
+                int expected;
+                if (len == 1) {
+                    expected = cp;
+                } else if (j == len - 1) {
+                    // 首字节：110xxxxx / 1110xxxx / 11110xxx
+                    expected = (0xFF00 >> len & 0xFF) | (cp >> (6 * j));
+                } else {
+                    expected = 0x80 | ((cp >> (6 * j)) & 0x3F);
+                }
+                if (p == end) {
+                    return -1;
+                }
+                int actual = data[p++] & 0xFF;
+                if (actual != expected) {
+                    return actual - expected;
+                }
+            }
+        }
+        return p == end ? 0 : 1;
+    }
+
+    // 打散 hashCode 的低位，避免同一包下的类名集中在相邻的槽位
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int getInt(byte[] b, int p) {
+        return (b[p] & 0xFF) << 24 | (b[p + 1] & 0xFF) << 16 | (b[p + 2] & 0xFF) << 8 | (b[p + 3] & 0xFF);
+    }
+
+    /**
+     * 处理一个归档时收集索引：提交加密任务时 {@link #expect(String)}，写出条目时 {@link #written(String, long, long)} 填入大小与 CRC。
+     */
+    public static final class Builder {
+        // 条目名 -> {大小, CRC}，写出前为 null
+        private final Map<String, long[]> entries = new HashMap<>();
+
+        public void expect(String entryName) {
+            entries.put(entryName, null);
+        }
+
+        /**
+         * 条目写出后调用，size 与 crc 为写出的（加密后的）数据的大小与 CRC32；未 expect 的条目被忽略。
+         */
+        public void written(String entryName, long size, long crc) {
+            if (entries.containsKey(entryName)) {
+                entries.put(entryName, new long[]{size, crc});
+            }
+        }
+
+        public boolean isEmpty() {
+            return entries.isEmpty();
+        }
+
+        public byte[] toByteArray() throws IOException {
+            List<String> classNames = new ArrayList<>(entries.size());
+            List<byte[]> names = new ArrayList<>(entries.size());
+            List<long[]> values = new ArrayList<>(entries.size());
+            for (Map.Entry<String, long[]> e : entries.entrySet()) {
+                if (e.getValue() != null) {
+                    String className = className(e.getKey());
+                    classNames.add(className);
+                    names.add(className.getBytes(StandardCharsets.UTF_8));
+                    values.add(e.getValue());
+                }
+            }
+            Integer[] order = new Integer[names.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> compareBytes(names.get(a), names.get(b)));
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeInt(order.length);
+            // 装载因子不超过 1/2
+            int slots = Integer.highestOneBit(Math.max(order.length, 1) * 2 - 1) * 2;
+            out.writeInt(slots);
+            int[] table = new int[slots];
+            int offset = 0;
+            for (int k = 0; k < order.length; k++) {
+                int i = order[k];
+                int hash = classNames.get(i).hashCode();
+                out.writeInt(offset);
+                out.writeInt(hash);
+                out.writeInt((int) values.get(i)[0]);
+                out.writeInt((int) values.get(i)[1]);
+                offset += names.get(i).length;
+                int slot = mix(hash) & (slots - 1);
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & (slots - 1);
+                }
+                table[slot] = k + 1;
+            }
+            for (int t : table) {
+                out.writeInt(t);
+            }
+            for (int i : order) {
+                out.write(names.get(i));
+            }
+            out.flush();
+            return baos.toByteArray();
+        }
+
+        private static int compareBytes(byte[] a, byte[] b) {
+            for (int i = 0, n = Math.min(a.length, b.length); i < n; i++) {
+                int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return a.length - b.length;
+        }
+    }
+}
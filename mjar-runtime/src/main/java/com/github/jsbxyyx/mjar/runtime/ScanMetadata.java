@@ -0,0 +1,260 @@
+package com.github.jsbxyyx.mjar.runtime;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipException;
+
+/**
+ * 加密 class 的类级元数据（--scan-metadata）：访问标志、父类、接口与类上的注解，
+ * 在加密前从明文中提取，写在归档的 {@link #NAME} 中。Spring 组件扫描等只需要这些信息的场景
+ * 可以直接查询，不必为读取类头而解密整个 class，见 {@link ScanMetadataReaderFactory}。
+ * <p>
+ * 格式（大端）：魔数 "MJCM"、版本 u2、保留 u2；字符串表（数量 u4，每个为 {@link DataOutputStream#writeUTF} 格式，
+ * 父类、接口与注解描述符在表中只出现一次）；条目数 u4，每个条目依次为类名 u4、访问标志 u4、父类 u4（无父类为 -1）、
+ * 接口数 u2 与接口 u4、注解数 u2 与注解 u4，u4 均为字符串表下标。条目按类名排序。
+ */
+public final class ScanMetadata {
+    public static final String NAME = "META-INF/mjar/classes.meta";
+    private static final int MAGIC = 0x4D4A434D;
+    private static final int VERSION = 1;
+    // class 文件的访问标志，java.lang.reflect.Modifier 中没有 ACC_ANNOTATION
+    private static final int ACC_ANNOTATION = 0x2000;
+
+    private final Map<String, ClassInfo> classes;
+
+    private ScanMetadata(Map<String, ClassInfo> classes) {
+        this.classes = classes;
+    }
+
+    public static ScanMetadata read(InputStream in) throws IOException {
+        Map<String, ClassInfo> classes = new HashMap<>();
+        readInto(in, classes);
+        return new ScanMetadata(classes);
+    }
+
+    /**
+     * 从 classloader 中读取元数据，没有时返回 null。有多个同名资源时只读取第一个，全部读取见 {@link #loadAll(ClassLoader)}。
+     */
+    public static ScanMetadata load(ClassLoader loader) throws IOException {
+        try (InputStream in = loader.getResourceAsStream(NAME)) {
+            return in == null ? null : read(in);
+        }
+    }
+
+    /**
+     * 读取并合并 classloader 中所有的元数据（fat jar 自身与每个嵌套 jar 各有一份），
+     * 同一个类出现多次时以 classpath 中靠前的为准；没有时返回空的元数据。
+     */
+    public static ScanMetadata loadAll(ClassLoader loader) throws IOException {
+        Map<String, ClassInfo> classes = new HashMap<>();
+        Enumeration<URL> urls = loader.getResources(NAME);
+        while (urls.hasMoreElements()) {
+            try (InputStream in = urls.nextElement().openStream()) {
+                readInto(in, classes);
+            }
+        }
+        return new ScanMetadata(classes);
+    }
+
+    private static void readInto(InputStream in, Map<String, ClassInfo> classes) throws IOException {
+        DataInputStream din = new DataInputStream(in);
+        if (din.readInt() != MAGIC) {
+            throw new ZipException("not an mjar class metadata file");
+        }
+        int version = din.readUnsignedShort();
+        if (version != VERSION) {
+            throw new ZipException("unsupported mjar class metadata version " + version);
+        }
+        din.readUnsignedShort();
+        String[] strings = new String[din.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = din.readUTF();
+        }
+        int count = din.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = strings[din.readInt()];
+            int access = din.readInt();
+            int superIndex = din.readInt();
+            String[] interfaces = new String[din.readUnsignedShort()];
+            for (int k = 0; k < interfaces.length; k++) {
+                interfaces[k] = strings[din.readInt()];
+            }
+            String[] annotations = new String[din.readUnsignedShort()];
+            for (int k = 0; k < annotations.length; k++) {
+                annotations[k] = strings[din.readInt()];
+            }
+            classes.putIfAbsent(name, new ClassInfo(name, access, superIndex < 0 ? null : strings[superIndex], interfaces, annotations));
+        }
+    }
+
+    public int size() {
+        return classes.size();
+    }
+
+    public boolean isEmpty() {
+        return classes.isEmpty();
+    }
+
+    /**
+     * 按内部形式的类名（如 {@code com/example/Foo}）查询，没有记录时返回 null，调用方需要回退到解密读取。
+     */
+    public ClassInfo get(String className) {
+        return classes.get(className);
+    }
+
+    public static final class ClassInfo {
+        private final String name;
+        private final int access;
+        private final String superName;
+        private final String[] interfaces;
+        private final String[] annotations;
+
+        /**
+         * 名称均为内部形式，access 为 class 文件中的 access_flags，annotations 为注解的描述符。
+         */
+        public ClassInfo(String name, int access, String superName, String[] interfaces, String[] annotations) {
+            this.name = name;
+            this.access = access;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.annotations = annotations;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * class 文件中的访问标志（ACC_PUBLIC 等）。
+         */
+        public int getAccess() {
+            return access;
+        }
+
+        public String getSuperName() {
+            return superName;
+        }
+
+        public List<String> getInterfaces() {
+            return Collections.unmodifiableList(Arrays.asList(interfaces));
+        }
+
+        /**
+         * 类上注解的描述符（如 {@code Lorg/springframework/stereotype/Component;}），包括运行时不可见的注解。
+         */
+        public List<String> getAnnotations() {
+            return Collections.unmodifiableList(Arrays.asList(annotations));
+        }
+
+        public boolean hasAnnotation(String descriptor) {
+            for (String a : annotations) {
+                if (a.equals(descriptor)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public boolean isInterface() {
+            return (access & Modifier.INTERFACE) != 0;
+        }
+
+        public boolean isAnnotation() {
+            return (access & ACC_ANNOTATION) != 0;
+        }
+
+        public boolean isAbstract() {
+            return (access & Modifier.ABSTRACT) != 0;
+        }
+
+        public boolean isFinal() {
+            return (access & Modifier.FINAL) != 0;
+        }
+    }
+
+    /**
+     * 处理一个归档时收集元数据，{@link #add(ClassInfo)} 可以在多个工作线程中并发调用。
+     */
+    public static final class Builder {
+        private final Map<String, ClassInfo> classes = new ConcurrentHashMap<>();
+
+        public void add(ClassInfo info) {
+            classes.put(info.name, info);
+        }
+
+        public boolean isEmpty() {
+            return classes.isEmpty();
+        }
+
+        public int size() {
+            return classes.size();
+        }
+
+        public byte[] toByteArray() throws IOException {
+            List<String> names = new ArrayList<>(classes.keySet());
+            Collections.sort(names);
+            // 字符串表按首次出现的顺序编号
+            Map<String, Integer> ids = new HashMap<>();
+            List<String> strings = new ArrayList<>();
+            for (String name : names) {
+                ClassInfo info = classes.get(name);
+                intern(ids, strings, info.name);
+                if (info.superName != null) {
+                    intern(ids, strings, info.superName);
+                }
+                for (String s : info.interfaces) {
+                    intern(ids, strings, s);
+                }
+                for (String s : info.annotations) {
+                    intern(ids, strings, s);
+                }
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(baos);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeInt(strings.size());
+            for (String s : strings) {
+                out.writeUTF(s);
+            }
+            out.writeInt(names.size());
+            for (String name : names) {
+                ClassInfo info = classes.get(name);
+                out.writeInt(ids.get(info.name));
+                out.writeInt(info.access);
+                out.writeInt(info.superName == null ? -1 : ids.get(info.superName));
+                out.writeShort(info.interfaces.length);
+                for (String s : info.interfaces) {
+                    out.writeInt(ids.get(s));
+                }
+                out.writeShort(info.annotations.length);
+                for (String s : info.annotations) {
+                    out.writeInt(ids.get(s));
+                }
+            }
+            out.flush();
+            return baos.toByteArray();
+        }
+
+        private static void intern(Map<String, Integer> ids, List<String> strings, String s) {
+            if (!ids.containsKey(s)) {
+                ids.put(s, strings.size());
+                strings.add(s);
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.github.jsbxyyx.mjar.runtime;
+
+import org.springframework.core.annotation.MergedAnnotations;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.ClassMetadata;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 使用 --scan-metadata 元数据的 Spring MetadataReaderFactory：组件扫描读取一个加密 class 的类头时，
+ * 若 {@link ScanMetadata} 中有该类的记录且类上没有注解，直接由元数据回答类名、父类、接口与访问标志，不必解密整个 class。
+ * 这类 class 通不过按注解过滤的组件扫描，Spring 只会查询这些信息。
+ * <p>
+ * 类上有注解的 class 仍由父类解密读取：元数据只记录注解的类型，没有属性值（如 {@code @Component("name")}）。
+ * 方法、外部类与成员类等元数据中没有的信息，第一次查询时才解密读取，之后都由真正的 MetadataReader 回答。
+ * <p>
+ * 用法：ClassPathScanningCandidateComponentProvider、ConfigurationClassPostProcessor 等的 setMetadataReaderFactory。
+ * mjar.decrypt.cache.stats=true 时退出前向 stderr 输出由元数据回答的次数与避免的解密次数。
+ * 依赖 spring-core 5.2+（应用自带），没有用到 Spring 的应用可以不引入。
+ */
+public class ScanMetadataReaderFactory extends CachingMetadataReaderFactory {
+    private static final String[] CLASS_ROOTS = {"BOOT-INF/classes/", "WEB-INF/classes/"};
+    // 所有实例共用：Spring 在一次启动中会创建多个 MetadataReaderFactory
+    private static final LongAdder served = new LongAdder();
+    private static final LongAdder decrypted = new LongAdder();
+
+    static {
+        if (Boolean.getBoolean(DecryptCache.STATS_PROPERTY)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.println(report()),
+                    "mjar-scan-metadata-stats"));
+        }
+    }
+
+    private volatile ScanMetadata metadata;
+
+    public ScanMetadataReaderFactory() {
+    }
+
+    public ScanMetadataReaderFactory(ResourceLoader resourceLoader) {
+        super(resourceLoader);
+    }
+
+    public ScanMetadataReaderFactory(ClassLoader classLoader) {
+        super(classLoader);
+    }
+
+    /**
+     * 由元数据回答、至今没有回退到解密读取的 class 数，即避免的解密次数。
+     */
+    public static long avoidedDecryptions() {
+        return served.sum() - decrypted.sum();
+    }
+
+    public static String report() {
+        return String.format("mjar scan metadata: served=%d, fallbacks=%d, avoided decryptions=%d",
+                served.sum(), decrypted.sum(), avoidedDecryptions());
+    }
+
+    @Override
+    public MetadataReader getMetadataReader(Resource resource) throws IOException {
+        ScanMetadata.ClassInfo info = lookup(resource);
+        if (info == null || !info.getAnnotations().isEmpty()) {
+            return super.getMetadataReader(resource);
+        }
+        served.increment();
+        return new HeaderReader(resource, info);
+    }
+
+    private MetadataReader decrypting(Resource resource) throws IOException {
+        return super.getMetadataReader(resource);
+    }
+
+    private ScanMetadata metadata() throws IOException {
+        ScanMetadata m = metadata;
+        if (m == null) {
+            ClassLoader loader = getResourceLoader().getClassLoader();
+            m = ScanMetadata.loadAll(loader != null ? loader : ClassLoader.getSystemClassLoader());
+            metadata = m;
+        }
+        return m;
+    }
+
+    private ScanMetadata.ClassInfo lookup(Resource resource) throws IOException {
+        String path = path(resource);
+        if (path == null || !path.endsWith(".class")) {
+            return null;
+        }
+        ScanMetadata m = metadata();
+        if (m.isEmpty()) {
+            return null;
+        }
+        path = path.substring(0, path.length() - ".class".length());
+        int sep = path.lastIndexOf("!/");
+        if (sep >= 0) {
+            return m.get(stripRoot(path.substring(sep + 2)));
+        }
+        ScanMetadata.ClassInfo info = m.get(stripRoot(path));
+        // 展开的目录等没有归档分隔符的 URL：从最长的后缀开始逐段尝试
+        for (int i = path.indexOf('/'); info == null && i >= 0; i = path.indexOf('/', i + 1)) {
+            info = m.get(stripRoot(path.substring(i + 1)));
+        }
+        return info;
+    }
+
+    private static String path(Resource resource) {
+        if (resource instanceof ClassPathResource) {
+            return ((ClassPathResource) resource).getPath();
+        }
+        try {
+            return resource.getURL().toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String stripRoot(String name) {
+        for (String root : CLASS_ROOTS) {
+            if (name.startsWith(root)) {
+                return name.substring(root.length());
+            }
+        }
+        return name;
+    }
+
+    private static String className(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+    /**
+     * 由元数据回答的 MetadataReader，同时是 AnnotationMetadata；类上没有注解，
+     * 其余元数据中没有的查询交给解密读取的 MetadataReader。
+     */
+    private final class HeaderReader implements MetadataReader, AnnotationMetadata {
+        private final Resource resource;
+        private final ScanMetadata.ClassInfo info;
+        private volatile MetadataReader delegate;
+
+        HeaderReader(Resource resource, ScanMetadata.ClassInfo info) {
+            this.resource = resource;
+            this.info = info;
+        }
+
+        private AnnotationMetadata delegate() {
+            MetadataReader d = delegate;
+            if (d == null) {
+                synchronized (this) {
+                    d = delegate;
+                    if (d == null) {
+                        try {
+                            d = decrypting(resource);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        decrypted.increment();
+                        delegate = d;
+                    }
+                }
+            }
+            return d.getAnnotationMetadata();
+        }
+
+        @Override
+        public Resource getResource() {
+            return resource;
+        }
+
+        @Override
+        public ClassMetadata getClassMetadata() {
+            return this;
+        }
+
+        @Override
+        public AnnotationMetadata getAnnotationMetadata() {
+            return this;
+        }
+
+        @Override
+        public String getClassName() {
+            return className(info.getName());
+        }
+
+        @Override
+        public boolean isInterface() {
+            return info.isInterface();
+        }
+
+        @Override
+        public boolean isAnnotation() {
+            return info.isAnnotation();
+        }
+
+        @Override
+        public boolean isAbstract() {
+            return info.isAbstract();
+        }
+
+        @Override
+        public boolean isFinal() {
+            return info.isFinal();
+        }
+
+        @Override
+        public boolean isIndependent() {
+            return delegate().isIndependent();
+        }
+
+        @Override
+        public String getEnclosingClassName() {
+            return delegate().getEnclosingClassName();
+        }
+
+        @Override
+        public String getSuperClassName() {
+            // 与 Spring 的读取结果一致：接口没有父类
+            return info.getSuperName() == null || info.isInterface() ? null : className(info.getSuperName());
+        }
+
+        @Override
+        public String[] getInterfaceNames() {
+            List<String> interfaces = info.getInterfaces();
+            String[] names = new String[interfaces.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = className(interfaces.get(i));
+            }
+            return names;
+        }
+
+        @Override
+        public String[] getMemberClassNames() {
+            return delegate().getMemberClassNames();
+        }
+
+        @Override
+        public MergedAnnotations getAnnotations() {
+            return MergedAnnotations.of(Collections.emptyList());
+        }
+
+        @Override
+        public Set<MethodMetadata> getAnnotatedMethods(String annotationName) {
+            return delegate().getAnnotatedMethods(annotationName);
+        }
+
+        /**
+         * Spring 6.1 起 AnnotationMetadata 的抽象方法；按 5.x 编译，通过反射交给解密读取的元数据。
+         */
+        @SuppressWarnings("unchecked")
+        public Set<MethodMetadata> getDeclaredMethods() {
+            AnnotationMetadata d = delegate();
+            try {
+                return (Set<MethodMetadata>) AnnotationMetadata.class.getMethod("getDeclaredMethods").invoke(d);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+            } catch (ReflectiveOperationException e) {
+                throw new UnsupportedOperationException("getDeclaredMethods", e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getClassName();
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.jsbxyyx.mjar.runtime;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 启动预热：按加密时 --trace 写入各归档的 META-INF/mjar/warmup.list，在后台线程中提前解密训练运行中加载过的加密 class，
+ * 结果进入共用的 {@link DecryptCache}，Spring 读取这些 class 时直接命中。须配合 --runtime-cache 使用。
+ * <p>
+ * 所有归档的列表按优先级合并，优先级高的先提交；同一个类出现在多个列表中时只取优先级最高的一次。
+ * 没有任何预热列表（加密时未使用 --trace）时，改为预热 --index 写出的 {@link EncryptedIndex} 中的所有加密 class。
+ * 缓存剩余空间不足以容纳下一个 class 时停止，预热不会挤掉已缓存的条目。
+ * <p>
+ * 可以在 main 中调用 {@link #start(ClassLoader, Class)}，也可以设置系统属性 mjar.warmup=true，
+ * 由第一次 maybeDecrypt 调用以 ClassReader 的类加载器自动开始；mjar.warmup.threads 指定线程数（默认 CPU 核数的一半）。
+ */
+public final class Warmup {
+    public static final String RESOURCE = "META-INF/mjar/warmup.list";
+    public static final String PROPERTY = "mjar.warmup";
+    public static final String THREADS_PROPERTY = "mjar.warmup.threads";
+
+    private final ClassLoader loader;
+    private final Class<?> classReader;
+    private final ExecutorService pool;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final long started = System.nanoTime();
+    private volatile long finished;
+    private volatile boolean cancelled;
+
+    private volatile int classes;
+    private final LongAdder decrypted = new LongAdder();
+    private final LongAdder missing = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private Warmup(ClassLoader loader, Class<?> classReader, int threads) {
+        this.loader = loader;
+        this.classReader = classReader;
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(Math.max(threads, 1), r -> {
+            Thread t = new Thread(r, "mjar-warmup-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+    }
+
+    public static Warmup start(ClassLoader loader, Class<?> classReader) {
+        return start(loader, classReader, Integer.getInteger(THREADS_PROPERTY,
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+    }
+
+    /**
+     * 在后台开始预热并立即返回。loader 用于读取列表与 class 资源，classReader 为打过补丁的 ClassReader，
+     * 解密经由它的 native maybeDecrypt（或 {@link DecryptCache#setDecryptor(Decryptor)} 指定的实现）。
+     */
+    public static Warmup start(ClassLoader loader, Class<?> classReader, int threads) {
+        Warmup warmup = new Warmup(loader, classReader, threads);
+        // 读取列表也在后台进行，调用方不必等待扫描所有嵌套 jar
+        warmup.pool.execute(warmup::plan);
+        return warmup;
+    }
+
+    private void plan() {
+        List<Map.Entry<String, Integer>> names;
+        try {
+            names = load(loader);
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            finish();
+            return;
+        }
+        classes = names.size();
+        if (names.isEmpty()) {
+            finish();
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(names.size());
+        for (Map.Entry<String, Integer> name : names) {
+            pool.execute(() -> {
+                try {
+                    warm(name.getKey());
+                } finally {
+                    if (remaining.decrementAndGet() == 0) finish();
+                }
+            });
+        }
+    }
+
+    private void finish() {
+        finished = System.nanoTime();
+        done.countDown();
+        pool.shutdown();
+    }
+
+    /**
+     * 读取并合并 loader 中所有的预热列表，按优先级排列；没有预热列表时为所有索引中的类名，优先级相同。
+     */
+    static List<Map.Entry<String, Integer>> load(ClassLoader loader) throws IOException {
+        Map<String, Integer> ranks = new LinkedHashMap<>();
+        Enumeration<URL> lists = loader.getResources(RESOURCE);
+        while (lists.hasMoreElements()) {
+            try (InputStream in = lists.nextElement().openStream()) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int space = line.indexOf(' ');
+                    if (space <= 0) {
+                        continue;
+                    }
+                    int rank = Integer.parseInt(line.substring(0, space));
+                    ranks.merge(line.substring(space + 1), rank, Math::min);
+                }
+            }
+        }
+        if (ranks.isEmpty()) {
+            for (EncryptedIndex index : EncryptedIndex.loadAll(loader)) {
+                for (int i = 0; i < index.size(); i++) {
+                    ranks.putIfAbsent(index.name(i), 0);
+                }
+            }
+        }
+        List<Map.Entry<String, Integer>> names = new ArrayList<>(ranks.entrySet());
+        names.sort(Comparator.comparingInt(Map.Entry::getValue));
+        return names;
+    }
+
+    private void warm(String name) {
+        if (cancelled) {
+            skipped.increment();
+            return;
+        }
+        try (InputStream in = loader.getResourceAsStream(name + ".class")) {
+            if (in == null) {
+                missing.increment();
+                return;
+            }
+            byte[] bytes = readAll(in);
+            DecryptCache cache = DecryptCache.shared();
+            // 加密字节与明文各占一份，装不下时不再继续
+            if (cache.maxBytes() <= 0 || cache.bytes() + bytes.length * 2L > cache.maxBytes()) {
+                cancelled = true;
+                skipped.increment();
+                return;
+            }
+            DecryptCache.maybeDecrypt(bytes, 0, classReader);
+            decrypted.increment();
+        } catch (IOException | RuntimeException | LinkageError e) {
+            failed.increment();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 停止提交新的解密，正在进行的解密仍会完成。
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public int classes() {
+        return classes;
+    }
+
+    public long decrypted() {
+        return decrypted.sum();
+    }
+
+    public String report() {
+        long end = isDone() ? finished : System.nanoTime();
+        return String.format("mjar warmup: classes=%d, decrypted=%d, missing=%d, skipped=%d, failed=%d, %s in %.1f ms",
+                classes, decrypted.sum(), missing.sum(), skipped.sum(), failed.sum(),
+                isDone() ? "done" : "running", (end - started) / 1e6);
+    }
+}
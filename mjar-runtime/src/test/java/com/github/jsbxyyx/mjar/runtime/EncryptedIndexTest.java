@@ -0,0 +1,93 @@
+package com.github.jsbxyyx.mjar.runtime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EncryptedIndexTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void lookupAndMatches() throws Exception {
+        byte[] data = "encrypted".getBytes(StandardCharsets.UTF_8);
+        EncryptedIndex index = EncryptedIndex.of(index(data,
+                "BOOT-INF/classes/com/example/App.class", "com/example/lib/Util.class", "com/example/Ünicode.class"));
+
+        assertEquals(3, index.size());
+        assertTrue(index.contains("com/example/App"));
+        assertTrue(index.contains("com/example/lib/Util"));
+        assertTrue(index.contains("com/example/Ünicode"));
+        assertFalse(index.contains("com/example/Other"));
+        assertFalse(index.contains("com/example/Ap"));
+        assertTrue(index.matches("com/example/App", data, 0, data.length));
+        assertFalse(index.matches("com/example/App", data, 1, data.length - 1));
+    }
+
+    /**
+     * fat jar 与嵌套 jar 各有一份索引：loadAll 全部读取，Warmup 在没有预热列表时按索引预热。
+     */
+    @Test
+    public void loadAllAndWarmupFallback() throws Exception {
+        byte[] data = "encrypted".getBytes(StandardCharsets.UTF_8);
+        File app = jar("app.jar", index(data, "BOOT-INF/classes/com/example/App.class"));
+        File lib = jar("lib.jar", index(data, "com/example/lib/Util.class", "com/example/lib/Helper.class"));
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{app.toURI().toURL(), lib.toURI().toURL()}, null)) {
+            List<EncryptedIndex> indexes = EncryptedIndex.loadAll(loader);
+            assertEquals(2, indexes.size());
+            assertTrue(EncryptedIndex.contains(indexes, "com/example/App"));
+            assertTrue(EncryptedIndex.contains(indexes, "com/example/lib/Helper"));
+            assertFalse(EncryptedIndex.contains(indexes, "com/example/Missing"));
+
+            List<String> names = new ArrayList<>();
+            for (Map.Entry<String, Integer> e : Warmup.load(loader)) {
+                names.add(e.getKey());
+            }
+            assertEquals(3, names.size());
+            assertTrue(names.contains("com/example/App"));
+            assertTrue(names.contains("com/example/lib/Util"));
+            assertTrue(names.contains("com/example/lib/Helper"));
+        }
+    }
+
+    private static byte[] index(byte[] data, String... entries) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        EncryptedIndex.Builder builder = new EncryptedIndex.Builder();
+        for (String entry : entries) {
+            builder.expect(entry);
+            builder.written(entry, data.length, crc.getValue());
+        }
+        // 未 expect 的条目不进索引
+        builder.written("com/example/NotEncrypted.class", data.length, crc.getValue());
+        return builder.toByteArray();
+    }
+
+    private File jar(String name, byte[] index) throws IOException {
+        File file = tmp.newFile(name);
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file))) {
+            zos.putNextEntry(new ZipEntry(EncryptedIndex.NAME));
+            zos.write(index);
+            zos.closeEntry();
+        }
+        return file;
+    }
+}
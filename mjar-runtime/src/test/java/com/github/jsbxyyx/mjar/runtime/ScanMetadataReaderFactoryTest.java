@@ -0,0 +1,127 @@
+package com.github.jsbxyyx.mjar.runtime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.UrlResource;
+import org.springframework.core.type.AnnotationMetadata;
+import org.springframework.core.type.classreading.MetadataReader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 元数据中的类头代替解密读取：加密的 class 用无法解析的字节代替，只要被读取就会失败。
+ */
+public class ScanMetadataReaderFactoryTest {
+    private static final String ENCRYPTED = "com/example/Encrypted";
+    private static final String PLAIN = internalName(Plain.class);
+    private static final String ANNOTATED = internalName(Annotated.class);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void answersFromMetadataWithoutDecrypting() throws Exception {
+        File jar = fatJar();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, getClass().getClassLoader())) {
+            ScanMetadataReaderFactory factory = new ScanMetadataReaderFactory(new DefaultResourceLoader(loader));
+            long avoided = ScanMetadataReaderFactory.avoidedDecryptions();
+
+            MetadataReader reader = factory.getMetadataReader(
+                    new UrlResource("jar:" + jar.toURI() + "!/BOOT-INF/classes/" + ENCRYPTED + ".class"));
+            AnnotationMetadata metadata = reader.getAnnotationMetadata();
+            assertEquals("com.example.Encrypted", metadata.getClassName());
+            assertEquals("com.example.Base", metadata.getSuperClassName());
+            assertArrayEquals(new String[]{"java.io.Serializable"}, metadata.getInterfaceNames());
+            assertTrue(metadata.isAbstract());
+            assertFalse(metadata.isInterface());
+            assertFalse(metadata.isConcrete());
+            assertFalse(metadata.hasAnnotation("org.springframework.stereotype.Component"));
+            assertFalse(metadata.hasMetaAnnotation("org.springframework.stereotype.Component"));
+            assertTrue(metadata.getAnnotationTypes().isEmpty());
+            assertEquals(avoided + 1, ScanMetadataReaderFactory.avoidedDecryptions());
+        }
+    }
+
+    @Test
+    public void fallsBackToDecryptingReader() throws Exception {
+        File jar = fatJar();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, getClass().getClassLoader())) {
+            ScanMetadataReaderFactory factory = new ScanMetadataReaderFactory(new DefaultResourceLoader(loader));
+            long avoided = ScanMetadataReaderFactory.avoidedDecryptions();
+
+            // 类上有注解：直接由父类读取，注解的属性值只有 class 中才有
+            AnnotationMetadata annotated = factory.getMetadataReader(Annotated.class.getName()).getAnnotationMetadata();
+            assertTrue(annotated.hasAnnotation(Marker.class.getName()));
+            assertEquals(avoided, ScanMetadataReaderFactory.avoidedDecryptions());
+
+            // 类头由元数据回答，成员类等元数据中没有的信息在第一次查询时解密读取
+            AnnotationMetadata plain = factory.getMetadataReader(Plain.class.getName()).getAnnotationMetadata();
+            assertEquals(Plain.class.getName(), plain.getClassName());
+            assertEquals(avoided + 1, ScanMetadataReaderFactory.avoidedDecryptions());
+            assertTrue(plain.isIndependent());
+            assertEquals(ScanMetadataReaderFactoryTest.class.getName(), plain.getEnclosingClassName());
+            assertFalse(plain.hasAnnotatedMethods(Marker.class.getName()));
+            assertEquals(avoided, ScanMetadataReaderFactory.avoidedDecryptions());
+
+            // 元数据中没有的类
+            MetadataReader other = factory.getMetadataReader(getClass().getName());
+            assertEquals(getClass().getName(), other.getClassMetadata().getClassName());
+            assertEquals(avoided, ScanMetadataReaderFactory.avoidedDecryptions());
+        }
+    }
+
+    /**
+     * 元数据记录了三个加密 class；{@link #ENCRYPTED} 的内容无法解析，另外两个是本测试的嵌套类。
+     */
+    private File fatJar() throws IOException {
+        ScanMetadata.Builder builder = new ScanMetadata.Builder();
+        builder.add(new ScanMetadata.ClassInfo(ENCRYPTED, Modifier.PUBLIC | Modifier.ABSTRACT,
+                "com/example/Base", new String[]{"java/io/Serializable"}, new String[0]));
+        builder.add(new ScanMetadata.ClassInfo(PLAIN, Modifier.PUBLIC | Modifier.STATIC,
+                "java/lang/Object", new String[]{"java/io/Serializable"}, new String[0]));
+        builder.add(new ScanMetadata.ClassInfo(ANNOTATED, Modifier.PUBLIC | Modifier.STATIC,
+                "java/lang/Object", new String[0], new String[]{"L" + internalName(Marker.class) + ";"}));
+
+        File file = tmp.newFile("app.jar");
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file))) {
+            zos.putNextEntry(new ZipEntry(ScanMetadata.NAME));
+            zos.write(builder.toByteArray());
+            zos.putNextEntry(new ZipEntry("BOOT-INF/classes/" + ENCRYPTED + ".class"));
+            zos.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+            zos.closeEntry();
+        }
+        return file;
+    }
+
+    private static String internalName(Class<?> c) {
+        return c.getName().replace('.', '/');
+    }
+
+    public static class Plain implements Serializable {
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Marker {
+    }
+
+    @Marker
+    public static class Annotated {
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.jsbxyyx.mjar;
+
+import com.github.jsbxyyx.mjar.runtime.AesDecryptor;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * 纯 Java 的 AES 加密器，不依赖原生库。输出格式为 IV 在前、密文在后：
+ * GCM 模式为 12 字节 nonce + 密文 + 16 字节认证标签，CTR 模式为 16 字节计数器初值 + 密文。
+ * <p>
+ * 可重复构建时（{@link #deterministic()}）IV 不再随机生成，而是取明文的 HMAC-SHA256 的前 12/16 字节，
+ * HMAC 的密钥由 AES 密钥派生；相同的 IV 只出现在相同的明文上，不会用同一个 nonce 加密不同的数据，代价是相同的 class 密文相同。
+ * <p>
+ * 每个线程持有自己的 {@link Cipher} 与随机数生成器，工作线程之间没有锁竞争；
+ * 加密结果直接写入最终的输出数组，不再经过中间缓冲区复制。
+ * <p>
+ * 密钥取自系统属性或环境变量 MJAR_AES_KEY（16/24/32 字节，十六进制或 Base64）。
+ * 运行时由 mjar-runtime 的 {@link AesDecryptor} 用同样的密钥解密：加密时需要 --runtime-cache，
+ * 启动时指定 -Dmjar.decryptor=aes-gcm（或 aes-ctr）；不使用 --runtime-cache 时需要能解密这一格式的 native maybeDecrypt。
+ */
+public class AesEncryptor implements Encryptor {
+    public static final String KEY_PROPERTY = AesDecryptor.KEY_PROPERTY;
+    private static final int GCM_NONCE_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+    private static final int CTR_IV_LENGTH = 16;
+    private static final int NONCE_MAC_LENGTH = 32;
+
+    private final boolean gcm;
+    private final String transformation;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Cipher> cipher;
+    private final ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(SecureRandom::new);
+    // 确定性模式下由明文派生 IV，随机 IV 时为 null
+    private final ThreadLocal<Mac> nonceMac;
+    // 每个线程复用的 IV 缓冲区：确定性模式下容纳整个 HMAC 结果，只取前 12/16 字节
+    private final ThreadLocal<byte[]> ivBuffer;
+
+    public AesEncryptor(boolean gcm, byte[] key) {
+        this(gcm, key, false);
+    }
+
+    private AesEncryptor(boolean gcm, byte[] key, boolean deterministic) {
+        if (key.length != 16 && key.length != 24 && key.length != 32) {
+            throw new IllegalArgumentException("AES key must be 16, 24 or 32 bytes, got " + key.length);
+        }
+        this.gcm = gcm;
+        this.key = new SecretKeySpec(key, "AES");
+        this.transformation = gcm ? "AES/GCM/NoPadding" : "AES/CTR/NoPadding";
+        this.cipher = ThreadLocal.withInitial(this::newCipher);
+        this.nonceMac = deterministic ? ThreadLocal.withInitial(() -> nonceMac(key)) : null;
+        int ivLength = deterministic ? NONCE_MAC_LENGTH : gcm ? GCM_NONCE_LENGTH : CTR_IV_LENGTH;
+        this.ivBuffer = ThreadLocal.withInitial(() -> new byte[ivLength]);
+    }
+
+    @Override
+    public byte[] encrypt(byte[] bytes) {
+        Cipher c = cipher.get();
+        int ivLength = gcm ? GCM_NONCE_LENGTH : CTR_IV_LENGTH;
+        byte[] iv = ivBuffer.get();
+        try {
+            if (nonceMac != null) {
+                Mac mac = nonceMac.get();
+                mac.update(bytes);
+                mac.doFinal(iv, 0);
+            } else {
+                random.get().nextBytes(iv);
+            }
+            if (gcm && nonceMac != null && samePrefix(iv, c.getIV(), ivLength)) {
+                // GCM 的 Cipher 拒绝连续两次使用同一个 nonce；确定性模式下这只发生在相同的明文上，换一个 Cipher 即可
+                c = newCipher();
+                cipher.set(c);
+            }
+            if (gcm) {
+                c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv, 0, ivLength));
+            } else {
+                c.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv, 0, ivLength));
+            }
+            // NoPadding 的 GCM/CTR 加密时 getOutputSize 就是确切长度，输出数组只分配这一次
+            byte[] out = new byte[ivLength + c.getOutputSize(bytes.length)];
+            System.arraycopy(iv, 0, out, 0, ivLength);
+            int n = c.doFinal(bytes, 0, bytes.length, out, ivLength);
+            if (ivLength + n != out.length) {
+                throw new IllegalStateException("Unexpected " + transformation + " output length " + n
+                        + " for " + bytes.length + " bytes");
+            }
+            return out;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean samePrefix(byte[] a, byte[] b, int len) {
+        if (b == null || b.length != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 模式加上密钥的摘要，密钥本身不会出现在缓存目录中。
+     */
+    @Override
+    public String identity() {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return (gcm ? "aes-gcm|" : "aes-ctr|") + (nonceMac != null ? "siv|" : "") + TransformCache.hex(md.digest(key.getEncoded()));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Cipher newCipher() {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Encryptor deterministic() {
+        return nonceMac != null ? this : new AesEncryptor(gcm, key.getEncoded(), true);
+    }
+
+    /**
+     * 派生 IV 用的 HMAC：密钥为 HMAC-SHA256(AES 密钥, "mjar nonce")，不直接复用 AES 密钥。
+     */
+    private static Mac nonceMac(byte[] key) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            byte[] nonceKey = mac.doFinal("mjar nonce".getBytes(StandardCharsets.US_ASCII));
+            mac.init(new SecretKeySpec(nonceKey, "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 读取 MJAR_AES_KEY：先查系统属性，再查环境变量，与运行时的 {@link AesDecryptor} 相同。
+     */
+    static byte[] configuredKey() {
+        return AesDecryptor.configuredKey();
+    }
+
+    public static class GcmProvider implements EncryptorProvider {
+        @Override
+        public String name() {
+            return "aes-gcm";
+        }
+
+        @Override
+        public Encryptor create() {
+            return new AesEncryptor(true, configuredKey());
+        }
+    }
+
+    public static class CtrProvider implements EncryptorProvider {
+        @Override
+        public String name() {
+            return "aes-ctr";
+        }
+
+        @Override
+        public Encryptor create() {
+            return new AesEncryptor(false, configuredKey());
+        }
+    }
+}
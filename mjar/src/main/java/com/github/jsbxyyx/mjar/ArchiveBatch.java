@@ -0,0 +1,306 @@
+package com.github.jsbxyyx.mjar;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 批量模式：在同一个 JVM 中处理多个归档，共用工作线程池、加密器与缓存，只付出一次启动、加载原生库与 JIT 预热的开销。
+ * <p>
+ * 输入可以是多个路径、glob（如 {@code dist/*.jar}、{@code services/**}{@code /*.war}）或 {@code @list.txt}
+ * （每行一个路径，忽略空行与 # 开头的行，相对路径以列表文件所在目录为准）。
+ * <p>
+ * 同时处理的归档数由 parallel 限定，每个归档在自己的线程中读取与写出，转换任务提交到共用的工作线程池。
+ * 每个归档最多有 queueDepth 个未写出的任务，共用线程池的 FIFO 队列中各归档的任务交替排列，
+ * 因此正在处理的归档按份额分到工作线程，大归档不会占满队列；归档按大小从大到小开始处理，
+ * 最大的归档最先开始，小归档在其余的线程中依次完成，不必排在它后面。
+ * 虚拟线程模式（--exec=virtual）下每个归档一个虚拟线程，同时处理的归档数由信号量限定。
+ * <p>
+ * 各归档的输出（目录树与完成信息）先收集在自己的线程中，归档完成后按输入顺序整段写出，不会与其他归档交错。
+ */
+final class ArchiveBatch {
+
+    /**
+     * 处理一个归档，把结果写到 output。
+     */
+    interface Job {
+        void run(File source, File output) throws Exception;
+    }
+
+    static final class Result {
+        final File source;
+        final File output;
+        long nanos;
+        long bytesIn;
+        long bytesOut;
+        Throwable error;
+        // 处理期间收集的输出，完成前为 null，写出后清空
+        String log;
+
+        Result(File source) {
+            this.source = source;
+            this.output = outputFor(source);
+        }
+    }
+
+    private ArchiveBatch() {
+    }
+
+    /**
+     * 是否为批量输入的写法：@ 开头的列表文件或含通配符的 glob。
+     */
+    static boolean isBatchSpec(String spec) {
+        return spec.startsWith("@") || isPattern(spec);
+    }
+
+    /**
+     * 展开输入：按出现顺序去重（以规范路径为准），glob 的结果按路径排序；
+     * 同时出现 app.jar 与 app-enc.jar 时去掉后者，避免把上次的输出再加密一遍。
+     */
+    static List<File> resolve(List<String> specs) throws IOException {
+        Map<String, File> files = new LinkedHashMap<>();
+        for (String spec : specs) {
+            for (File f : expand(spec)) {
+                files.putIfAbsent(f.getCanonicalPath(), f);
+            }
+        }
+        Set<String> outputs = new HashSet<>();
+        for (File f : files.values()) {
+            outputs.add(outputFor(f).getCanonicalPath());
+        }
+        List<File> result = new ArrayList<>();
+        for (Map.Entry<String, File> e : files.entrySet()) {
+            if (!outputs.contains(e.getKey())) {
+                result.add(e.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 输出文件名：app.jar → app-enc.jar，app.war → app-enc.war，与输入位于同一目录。
+     */
+    static File outputFor(File source) {
+        String name = source.getName().replace(".jar", "-enc.jar").replace(".war", "-enc.war");
+        return new File(source.getParent(), name);
+    }
+
+    private static List<File> expand(String spec) throws IOException {
+        List<File> files = new ArrayList<>();
+        if (spec.startsWith("@")) {
+            File list = new File(spec.substring(1));
+            for (String line : Files.readAllLines(list.toPath(), StandardCharsets.UTF_8)) {
+                String path = line.trim();
+                if (path.isEmpty() || path.startsWith("#")) {
+                    continue;
+                }
+                File f = new File(path);
+                files.add(f.isAbsolute() ? f : new File(list.getAbsoluteFile().getParentFile(), path));
+            }
+        } else if (isPattern(spec)) {
+            // 通配符之前的最后一个 / 分隔出起始目录，其余部分相对该目录匹配
+            String pattern = spec.replace(File.separatorChar, '/');
+            int wildcard = firstWildcard(pattern);
+            int slash = pattern.lastIndexOf('/', wildcard);
+            Path base = new File(slash < 0 ? "." : slash == 0 ? "/" : pattern.substring(0, slash)).toPath();
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(slash + 1));
+            if (Files.isDirectory(base)) {
+                try (Stream<Path> paths = Files.walk(base)) {
+                    files.addAll(paths.filter(Files::isRegularFile)
+                            .filter(p -> matcher.matches(base.relativize(p)))
+                            .sorted()
+                            .map(Path::toFile)
+                            .collect(Collectors.toList()));
+                }
+            }
+        } else {
+            files.add(new File(spec));
+        }
+        return files;
+    }
+
+    private static boolean isPattern(String spec) {
+        return firstWildcard(spec) >= 0;
+    }
+
+    private static int firstWildcard(String spec) {
+        for (int i = 0; i < spec.length(); i++) {
+            char c = spec.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 用 parallel 个线程处理所有归档，单个归档失败不影响其他归档；返回的结果与 sources 顺序一致。
+     */
+    static List<Result> run(List<File> sources, int parallel, Job job) throws InterruptedException {
+        return run(sources, parallel, job, null);
+    }
+
+    /**
+     * virtual 不为 null 时每个归档在其中的一个虚拟线程中处理，按从大到小的顺序取得 parallel 个名额之一后开始。
+     */
+    static List<Result> run(List<File> sources, int parallel, Job job, ExecutorService virtual) throws InterruptedException {
+        List<Result> results = new ArrayList<>();
+        for (File source : sources) {
+            results.add(new Result(source));
+        }
+        List<Result> order = new ArrayList<>(results);
+        order.sort(Comparator.comparingLong((Result r) -> r.source.length()).reversed());
+        OrderedLog logs = new OrderedLog(results);
+        if (virtual != null) {
+            Semaphore slots = new Semaphore(Math.max(parallel, 1));
+            List<Future<?>> running = new ArrayList<>();
+            for (Result result : order) {
+                slots.acquire();
+                running.add(virtual.submit(() -> {
+                    try {
+                        process(result, job, logs);
+                    } finally {
+                        slots.release();
+                    }
+                }));
+            }
+            for (Future<?> f : running) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    // process 已捕获并记录所有异常
+                }
+            }
+            return results;
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService archives = Executors.newFixedThreadPool(Math.max(parallel, 1), r -> {
+            Thread t = new Thread(r, "mjar-archive-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            for (Result result : order) {
+                archives.execute(() -> process(result, job, logs));
+            }
+            archives.shutdown();
+            while (!archives.awaitTermination(1, TimeUnit.MINUTES)) {
+                // 等待所有归档完成
+            }
+        } finally {
+            archives.shutdownNow();
+        }
+        return results;
+    }
+
+    private static void process(Result result, Job job, OrderedLog logs) {
+        StringBuilder previous = Log.beginCapture();
+        try {
+            long start = System.nanoTime();
+            result.bytesIn = result.source.length();
+            try {
+                job.run(result.source, result.output);
+                result.bytesOut = result.output.length();
+            } catch (Throwable t) {
+                // 不留下不完整的输出
+                result.output.delete();
+                result.error = t;
+            }
+            result.nanos = System.nanoTime() - start;
+            if (result.error == null) {
+                Log.summary(String.format("Done: %s (%.1f ms)", result.source.getName(), result.nanos / 1e6));
+            } else {
+                Log.summary("Failed: " + result.source.getPath() + ": " + result.error);
+            }
+        } finally {
+            logs.done(result, Log.endCapture(previous));
+        }
+    }
+
+    /**
+     * 按输入顺序写出各归档收集的输出：一个归档完成时，写出从第一个未写出的归档开始所有已完成的归档。
+     */
+    private static final class OrderedLog {
+        private final List<Result> results;
+        private int next;
+
+        OrderedLog(List<Result> results) {
+            this.results = results;
+        }
+
+        synchronized void done(Result result, String log) {
+            result.log = log;
+            while (next < results.size() && results.get(next).log != null) {
+                Result r = results.get(next++);
+                Log.emit(r.log);
+                r.log = null;
+            }
+            Log.flush();
+        }
+    }
+
+    static int failures(List<Result> results) {
+        int n = 0;
+        for (Result r : results) {
+            if (r.error != null) n++;
+        }
+        return n;
+    }
+
+    /**
+     * 汇总表：每个归档的耗时、输入输出大小与状态，按输入顺序排列。
+     */
+    static String report(List<Result> results) {
+        int width = 7;
+        for (Result r : results) {
+            width = Math.max(width, r.source.getName().length());
+        }
+        StringBuilder sb = new StringBuilder();
+        String row = "%-" + width + "s %10s %14s %14s  %s%n";
+        sb.append(String.format(row, "archive", "time (ms)", "in", "out", "status"));
+        for (Result r : results) {
+            sb.append(String.format(row, r.source.getName(), String.format("%.1f", r.nanos / 1e6), r.bytesIn,
+                    r.error == null ? String.valueOf(r.bytesOut) : "-", r.error == null ? "ok" : "FAILED: " + r.error));
+        }
+        int failed = failures(results);
+        sb.append(String.format("archives: %d, ok: %d, failed: %d", results.size(), results.size() - failed, failed));
+        return sb.toString();
+    }
+
+    static String toJson(List<Result> results) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    {\"source\": ").append(ArchivePlan.quote(r.source.getPath()))
+                    .append(", \"output\": ").append(r.error != null ? "null" : ArchivePlan.quote(r.output.getPath()))
+                    .append(", \"wallMillis\": ").append(r.nanos / 1_000_000)
+                    .append(", \"bytesIn\": ").append(r.bytesIn)
+                    .append(", \"bytesOut\": ").append(r.bytesOut)
+                    .append(", \"error\": ").append(r.error == null ? "null" : ArchivePlan.quote(r.error.toString()))
+                    .append('}');
+        }
+        return sb.append(results.isEmpty() ? "]" : "\n  ]").toString();
+    }
+}
@@ -0,0 +1,217 @@
+package com.github.jsbxyyx.mjar;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * --plan 模式：只读取各级归档的中央目录，统计 Mjarencrypt4 将要做的工作及输出大小的估算，不加密也不写出文件。
+ * STORED 的嵌套归档直接映射，压缩过的嵌套归档需要先解压（与正式处理时相同）才能读取其中央目录。
+ * <p>
+ * 输出大小的估算：加密后的 class 按原大小计算且视为不可再压缩，打补丁的 class 按原压缩大小计算，
+ * 原样复制的条目与跳过的嵌套归档按原压缩大小计算，另加每个条目的本地文件头与中央目录记录。
+ */
+public class ArchivePlan {
+    // 本地文件头 30 字节 + 中央目录记录 46 字节，不含文件名
+    private static final int ENTRY_OVERHEAD = 30 + 46;
+    private static final int END_OVERHEAD = 22;
+
+    final String name;
+    final boolean stored;
+    final List<ArchivePlan> children = new ArrayList<>();
+    int encryptCount;
+    long encryptBytes;
+    int patchCount;
+    long patchBytes;
+    int resourceCount;
+    long resourceBytes;
+    int archiveCount;
+    long archiveBytes;
+    long inputSize;
+    long projectedSize;
+    // 没有任何需要改动的内容，整体原样复制
+    boolean passThrough;
+
+    private ArchivePlan(String name, boolean stored) {
+        this.name = name;
+        this.stored = stored;
+    }
+
+    /**
+     * @param level 输出条目的压缩级别，0 表示 STORED
+     */
+    public static ArchivePlan scan(MappedZipFile zip, String name, int level) throws Exception {
+        ArchivePlan plan = new ArchivePlan(name, true);
+        plan.inputSize = zip.length();
+        plan.collect(zip, level);
+        return plan;
+    }
+
+    private void collect(MappedZipFile zip, int level) throws Exception {
+        long projected = END_OVERHEAD;
+        boolean changes = false;
+        for (MappedZipFile.Entry entry : zip.entries()) {
+            String entryName = entry.getName();
+            long overhead = ENTRY_OVERHEAD + 2L * entryName.getBytes(StandardCharsets.UTF_8).length;
+            boolean isClass = entryName.endsWith(".class");
+            if (entryName.endsWith(".jar") || entryName.endsWith(".war")) {
+                archiveCount++;
+                archiveBytes += entry.getCompressedSize();
+                ArchivePlan child = nested(zip, entry, level);
+                children.add(child);
+                changes |= !child.passThrough;
+                projected += overhead + (child.passThrough ? entry.getCompressedSize() : child.projectedSize);
+            } else if (isClass && Mjarencrypt4.needEncrypt(entryName)) {
+                encryptCount++;
+                encryptBytes += entry.getSize();
+                changes = true;
+                projected += overhead + entry.getSize();
+            } else if (isClass && Mjarencrypt4.needPatch(entryName)) {
+                patchCount++;
+                patchBytes += entry.getSize();
+                changes = true;
+                projected += overhead + (level == 0 ? entry.getSize() : entry.getCompressedSize());
+            } else if (!JarFile.MANIFEST_NAME.equalsIgnoreCase(entryName)) {
+                resourceCount++;
+                resourceBytes += entry.getCompressedSize();
+                projected += overhead + entry.getCompressedSize();
+            } else {
+                projected += overhead + entry.getCompressedSize();
+            }
+        }
+        passThrough = stored && !changes;
+        projectedSize = passThrough ? inputSize : projected;
+    }
+
+    private static ArchivePlan nested(MappedZipFile zip, MappedZipFile.Entry entry, int level) throws Exception {
+        ArchivePlan child = new ArchivePlan(entry.getName(), entry.getMethod() == ZipEntry.STORED);
+        child.inputSize = entry.getSize();
+        if (child.stored) {
+            child.collect(MappedZipFile.wrap(zip.rawData(entry)), level);
+            return child;
+        }
+        // 压缩过的嵌套归档正式处理时总会重建，这里同样需要解压后才能读取中央目录
+        Spool in = Spool.stored();
+        try {
+            try (InputStream is = zip.open(entry)) {
+                in.writeAll(is);
+            }
+            in.close();
+            child.collect(MappedZipFile.wrap(in.toByteBuffer()), level);
+        } finally {
+            in.release();
+        }
+        return child;
+    }
+
+    /**
+     * 表格形式的统计，每个归档一行，嵌套归档按层缩进。
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        Formatter out = new Formatter(sb);
+        out.format("%-10s %8s %12s %8s %12s %8s %12s %6s %14s %14s%n",
+                "", "[E]", "bytes", "[P]", "bytes", "[R]", "bytes", "[A]", "input", "projected");
+        print(out, 0);
+        out.format("Total: %d to encrypt (%d bytes), %d to patch (%d bytes), %d archives (%d passed through)%n",
+                totalEncrypt(), totalEncryptBytes(), totalPatch(), totalPatchBytes(), totalArchives(), totalPassThrough());
+        out.format("Projected size: %d -> %d bytes%n", inputSize, projectedSize);
+        return sb.toString();
+    }
+
+    private void print(Formatter out, int depth) {
+        StringBuilder indent = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            indent.append("│   ");
+        }
+        out.format("%s├── [A] %s%s%n", indent, name, passThrough ? " [S]" : "");
+        out.format("%-10s %8d %12d %8d %12d %8d %12d %6d %14d %14d%n",
+                "", encryptCount, encryptBytes, patchCount, patchBytes,
+                resourceCount, resourceBytes, archiveCount, inputSize, projectedSize);
+        for (ArchivePlan child : children) {
+            child.print(out, depth + 1);
+        }
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        toJson(sb, "");
+        return sb.append('\n').toString();
+    }
+
+    private void toJson(StringBuilder sb, String indent) {
+        String in = indent + "  ";
+        sb.append("{\n");
+        sb.append(in).append("\"name\": ").append(quote(name)).append(",\n");
+        sb.append(in).append("\"stored\": ").append(stored).append(",\n");
+        sb.append(in).append("\"passThrough\": ").append(passThrough).append(",\n");
+        sb.append(in).append("\"encrypt\": {\"count\": ").append(encryptCount).append(", \"bytes\": ").append(encryptBytes).append("},\n");
+        sb.append(in).append("\"patch\": {\"count\": ").append(patchCount).append(", \"bytes\": ").append(patchBytes).append("},\n");
+        sb.append(in).append("\"resources\": {\"count\": ").append(resourceCount).append(", \"bytes\": ").append(resourceBytes).append("},\n");
+        sb.append(in).append("\"archives\": {\"count\": ").append(archiveCount).append(", \"bytes\": ").append(archiveBytes).append("},\n");
+        sb.append(in).append("\"inputSize\": ").append(inputSize).append(",\n");
+        sb.append(in).append("\"projectedSize\": ").append(projectedSize).append(",\n");
+        sb.append(in).append("\"children\": [");
+        for (int i = 0; i < children.size(); i++) {
+            sb.append(i == 0 ? "\n" : ",\n").append(in).append("  ");
+            children.get(i).toJson(sb, in + "  ");
+        }
+        sb.append(children.isEmpty() ? "]\n" : "\n" + in + "]\n");
+        sb.append(indent).append('}');
+    }
+
+    private int totalEncrypt() {
+        int n = encryptCount;
+        for (ArchivePlan c : children) n += c.totalEncrypt();
+        return n;
+    }
+
+    private long totalEncryptBytes() {
+        long n = encryptBytes;
+        for (ArchivePlan c : children) n += c.totalEncryptBytes();
+        return n;
+    }
+
+    private int totalPatch() {
+        int n = patchCount;
+        for (ArchivePlan c : children) n += c.totalPatch();
+        return n;
+    }
+
+    private long totalPatchBytes() {
+        long n = patchBytes;
+        for (ArchivePlan c : children) n += c.totalPatchBytes();
+        return n;
+    }
+
+    private int totalArchives() {
+        int n = archiveCount;
+        for (ArchivePlan c : children) n += c.totalArchives();
+        return n;
+    }
+
+    private int totalPassThrough() {
+        int n = 0;
+        for (ArchivePlan c : children) n += (c.passThrough ? 1 : 0) + c.totalPassThrough();
+        return n;
+    }
+
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,151 @@
+package com.github.jsbxyyx.mjar;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 按尺寸等级复用的缓冲区池。等级为 4K、8K ... 1M 的 2 的幂，申请时向上取整到所在等级，
+ * 超过 1M 的请求直接分配、归还时丢弃。每个等级按线程分成若干条带，每条带只有几个槽位，
+ * 借还都是对槽位的一次 getAndSet / compareAndSet，不加锁也不分配对象；
+ * 池满时归还的缓冲区直接丢给 GC，池空时现场分配，因此池中占用的内存有上限。
+ * <p>
+ * 另有可选的堆外等级（{@link #setDirect(boolean)}），供写临时文件等经由 FileChannel 的场景使用，
+ * 避免 JDK 在每次写入时把堆内数组复制到临时的直接缓冲区。
+ * <p>
+ * 从池中取出的数组内容是未清零的，调用方只能使用自己写入的部分。
+ */
+public final class BufferPool {
+    private static final int MIN_SHIFT = 12;
+    private static final int MAX_SHIFT = 20;
+    private static final int CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+    private static final int SLOTS = 4;
+    private static final int STRIPES = stripes();
+
+    private static final AtomicReferenceArray<byte[]> heap = new AtomicReferenceArray<>(CLASSES * STRIPES * SLOTS);
+    private static final AtomicReferenceArray<ByteBuffer> direct = new AtomicReferenceArray<>(CLASSES * STRIPES * SLOTS);
+    private static volatile boolean directEnabled = false;
+
+    private BufferPool() {
+    }
+
+    public static void setDirect(boolean enabled) {
+        directEnabled = enabled;
+    }
+
+    /**
+     * 申请至少 size 字节的数组，长度可能大于 size。
+     */
+    public static byte[] acquire(int size) {
+        int c = sizeClass(size);
+        if (c < 0) {
+            return new byte[size];
+        }
+        int base = base(c);
+        for (int i = 0; i < SLOTS; i++) {
+            byte[] b = heap.getAndSet(base + i, null);
+            if (b != null) {
+                return b;
+            }
+        }
+        return new byte[1 << (c + MIN_SHIFT)];
+    }
+
+    /**
+     * 归还数组。长度不是池中尺寸等级的数组（例如直接分配的大数组）会被忽略。
+     */
+    public static void release(byte[] b) {
+        if (b == null) {
+            return;
+        }
+        int c = exactClass(b.length);
+        if (c < 0) {
+            return;
+        }
+        int base = base(c);
+        for (int i = 0; i < SLOTS; i++) {
+            if (heap.compareAndSet(base + i, null, b)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 申请至少 size 字节、position 为 0、limit 为容量的缓冲区；未启用堆外等级时返回包装池中数组的堆内缓冲区。
+     */
+    public static ByteBuffer acquireBuffer(int size) {
+        if (!directEnabled) {
+            return ByteBuffer.wrap(acquire(size));
+        }
+        int c = sizeClass(size);
+        if (c < 0) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        int base = base(c);
+        for (int i = 0; i < SLOTS; i++) {
+            ByteBuffer b = direct.getAndSet(base + i, null);
+            if (b != null) {
+                b.clear();
+                return b;
+            }
+        }
+        return ByteBuffer.allocateDirect(1 << (c + MIN_SHIFT));
+    }
+
+    public static void release(ByteBuffer b) {
+        if (b == null) {
+            return;
+        }
+        if (!b.isDirect()) {
+            if (b.hasArray() && b.arrayOffset() == 0) {
+                release(b.array());
+            }
+            return;
+        }
+        int c = exactClass(b.capacity());
+        if (c < 0) {
+            return;
+        }
+        int base = base(c);
+        for (int i = 0; i < SLOTS; i++) {
+            if (direct.compareAndSet(base + i, null, b)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * size 所在等级实际分配的大小，超过最大等级时为 size 本身。
+     */
+    public static int capacityFor(int size) {
+        int c = sizeClass(size);
+        return c < 0 ? size : 1 << (c + MIN_SHIFT);
+    }
+
+    private static int sizeClass(int size) {
+        if (size > 1 << MAX_SHIFT) {
+            return -1;
+        }
+        if (size <= 1 << MIN_SHIFT) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SHIFT;
+    }
+
+    private static int exactClass(int length) {
+        if (Integer.bitCount(length) != 1) {
+            return -1;
+        }
+        int shift = Integer.numberOfTrailingZeros(length);
+        return shift < MIN_SHIFT || shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+    }
+
+    private static int base(int sizeClass) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        return (sizeClass * STRIPES + stripe) * SLOTS;
+    }
+
+    private static int stripes() {
+        int n = Runtime.getRuntime().availableProcessors();
+        return Integer.highestOneBit(Math.max(n, 1) * 2 - 1);
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.jsbxyyx.mjar;
+
+/**
+ * class 加密器。{@link Mjarencrypt} 是基于 libmjar 的实现，{@link AesEncryptor} 是纯 Java 实现，
+ * 通过 {@link EncryptorProvider} 按名称选择。
+ */
+public interface Encryptor {
+
+    byte[] encrypt(byte[] bytes);
+
+    /**
+     * 标识加密器及其配置（库文件、密钥等），作为增量缓存的盐，标识不同的加密结果不会互相命中。
+     */
+    default String identity() {
+        return getClass().getName();
+    }
+
+    /**
+     * 可重复构建使用的加密器：相同的明文总是得到相同的密文。默认返回自身，即认为实现本身是确定性的；
+     * 使用随机 IV 的实现需要返回一个由明文派生 IV 的版本，且 {@link #identity()} 与随机 IV 的版本不同。
+     */
+    default Encryptor deterministic() {
+        return this;
+    }
+}
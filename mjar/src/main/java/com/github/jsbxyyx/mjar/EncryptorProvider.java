@@ -0,0 +1,40 @@
+package com.github.jsbxyyx.mjar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * 加密器的 SPI，通过 {@link ServiceLoader} 从 META-INF/services 中发现。
+ * 查找 provider 时只会实例化 provider 本身，真正的加密器（例如需要加载 libmjar 的 {@link Mjarencrypt}）
+ * 直到 {@link #create()} 时才创建，因此没有原生库的环境也可以使用纯 Java 实现。
+ */
+public interface EncryptorProvider {
+
+    /**
+     * 命令行 --encryptor= 使用的名称。
+     */
+    String name();
+
+    Encryptor create();
+
+    /**
+     * 按名称查找 provider 并创建加密器，找不到时抛出 IllegalArgumentException。
+     */
+    static Encryptor load(String name) {
+        for (EncryptorProvider provider : ServiceLoader.load(EncryptorProvider.class)) {
+            if (provider.name().equalsIgnoreCase(name)) {
+                return provider.create();
+            }
+        }
+        throw new IllegalArgumentException("Unknown encryptor: " + name + ", available: " + names());
+    }
+
+    static List<String> names() {
+        List<String> names = new ArrayList<>();
+        for (EncryptorProvider provider : ServiceLoader.load(EncryptorProvider.class)) {
+            names.add(provider.name());
+        }
+        return names;
+    }
+}
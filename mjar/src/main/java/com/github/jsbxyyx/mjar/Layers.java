@@ -0,0 +1,308 @@
+package com.github.jsbxyyx.mjar;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * 分层输出（--layers=DIR）：把加密后的归档按层展开到 DIR/&lt;层名&gt;/ 下，目录结构与 Spring Boot
+ * {@code java -Djarmode=layertools -jar app.jar extract} 相同，镜像中每层单独 COPY。
+ * 未改动的第三方依赖逐字节不变，文件时间取自条目时间，代码改动时只有 application 与 rewritten-dependencies 层变化。
+ * <p>
+ * 分层规则优先取归档中的 BOOT-INF/layers.idx（WEB-INF/layers.idx），没有时使用 Spring Boot 的默认分层：
+ * dependencies（lib 下的依赖）、spring-boot-loader、snapshot-dependencies（文件名含 SNAPSHOT 的依赖）与 application（其余条目）。
+ * 本次重建过的嵌套归档（含加密或打补丁的 class，例如应用自己的模块 jar）内容随代码变化，从原有的层中移出，
+ * 单独列在 application 之前的 {@link #REWRITTEN} 层，dependencies 中只留下逐字节不变的依赖。
+ * 条目先按全名规则查找，再归入第一个前缀匹配（以 / 结尾的规则）的层；都不匹配时归入最后一层。
+ * 展开的同时在 DIR 下写出 layers.idx，按相同格式列出各层，层的顺序即镜像中 COPY 的顺序。
+ * 镜像层的摘要也包含目录的修改时间，因此每层中目录的时间统一为该层最新的条目时间。
+ */
+final class Layers {
+    static final String INDEX_NAME = "layers.idx";
+    static final String REWRITTEN = "rewritten-dependencies";
+    private static final String APPLICATION = "application";
+    private static final String[] INDEX_LOCATIONS = {"BOOT-INF/layers.idx", "WEB-INF/layers.idx"};
+    private static final String[] LIB_DIRS = {"BOOT-INF/lib/", "WEB-INF/lib/", "WEB-INF/lib-provided/"};
+    private static final String LOADER = "org/springframework/boot/loader/";
+
+    // 层名 -> 规则，保持层的顺序
+    private final Map<String, List<String>> layers;
+    // 全名规则 -> 层名，同名规则以靠前的层为准
+    private final Map<String, String> exact = new HashMap<>();
+    // 各层写出的文件数、字节数与最新的条目时间
+    private final Map<String, long[]> totals = new LinkedHashMap<>();
+
+    private Layers(Map<String, List<String>> layers) {
+        this.layers = layers;
+        for (Map.Entry<String, List<String>> layer : layers.entrySet()) {
+            totals.put(layer.getKey(), new long[3]);
+            for (String rule : layer.getValue()) {
+                if (!rule.endsWith("/")) {
+                    exact.putIfAbsent(rule, layer.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * 归档中有 layers.idx 时按其分层，否则使用默认分层；rewritten 中的条目移到 {@link #REWRITTEN} 层。
+     */
+    static Layers of(MappedZipFile zip, Set<String> rewritten) throws IOException {
+        for (String location : INDEX_LOCATIONS) {
+            MappedZipFile.Entry entry = zip.getEntry(location);
+            if (entry != null) {
+                try (InputStream in = zip.open(entry)) {
+                    return parse(in).separate(rewritten);
+                }
+            }
+        }
+        return defaults(zip.entries()).separate(rewritten);
+    }
+
+    /**
+     * 解析 Spring Boot 的 layers.idx：{@code - "层名":} 开始一层，其后的 {@code   - "规则"} 属于该层。
+     */
+    static Layers parse(InputStream in) throws IOException {
+        Map<String, List<String>> layers = new LinkedHashMap<>();
+        List<String> current = null;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("- \"") && line.endsWith("\":")) {
+                current = new ArrayList<>();
+                layers.put(line.substring(3, line.length() - 2), current);
+            } else if (line.startsWith("  - \"") && line.endsWith("\"") && current != null) {
+                current.add(line.substring(5, line.length() - 1));
+            } else if (!line.trim().isEmpty()) {
+                throw new ZipException("invalid layers.idx line: " + line);
+            }
+        }
+        if (layers.isEmpty()) {
+            throw new ZipException("empty layers.idx");
+        }
+        return new Layers(layers);
+    }
+
+    /**
+     * Spring Boot 的默认分层。依赖逐个列出（快照依赖与普通依赖位于同一目录，无法用前缀区分），
+     * application 层列出其余条目的顶层目录，BOOT-INF/、WEB-INF/ 下则取到第二层。
+     */
+    static Layers defaults(List<MappedZipFile.Entry> entries) {
+        Set<String> dependencies = new LinkedHashSet<>();
+        Set<String> snapshots = new LinkedHashSet<>();
+        Set<String> application = new LinkedHashSet<>();
+        for (MappedZipFile.Entry entry : entries) {
+            String name = entry.getName();
+            String lib = libDir(name);
+            if (lib != null && !entry.isDirectory()) {
+                (name.substring(lib.length()).contains("SNAPSHOT") ? snapshots : dependencies).add(name);
+            } else if (lib == null && !entry.isDirectory() && !name.startsWith(LOADER)) {
+                int slash = name.indexOf('/');
+                if (slash >= 0 && (name.startsWith("BOOT-INF/") || name.startsWith("WEB-INF/"))) {
+                    slash = name.indexOf('/', slash + 1);
+                }
+                application.add(slash < 0 ? name : name.substring(0, slash + 1));
+            }
+        }
+        Map<String, List<String>> layers = new LinkedHashMap<>();
+        layers.put("dependencies", new ArrayList<>(dependencies));
+        layers.put("spring-boot-loader", new ArrayList<>());
+        layers.get("spring-boot-loader").add(LOADER);
+        layers.put("snapshot-dependencies", new ArrayList<>(snapshots));
+        layers.put(APPLICATION, new ArrayList<>(application));
+        return new Layers(layers);
+    }
+
+    /**
+     * 把 names 从各层的全名规则中移除，单独组成 {@link #REWRITTEN} 层，位于 application 之前（没有 application 层时位于最后一层之前）。
+     */
+    Layers separate(Set<String> names) {
+        if (names == null || names.isEmpty()) {
+            return this;
+        }
+        String before = layers.containsKey(APPLICATION) ? APPLICATION : null;
+        if (before == null) {
+            for (String layer : layers.keySet()) {
+                before = layer;
+            }
+        }
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> layer : layers.entrySet()) {
+            if (layer.getKey().equals(before)) {
+                result.put(REWRITTEN, new ArrayList<>(names));
+            }
+            List<String> rules = new ArrayList<>(layer.getValue());
+            rules.removeAll(names);
+            result.put(layer.getKey(), rules);
+        }
+        return new Layers(result);
+    }
+
+    private static String libDir(String name) {
+        for (String dir : LIB_DIRS) {
+            if (name.startsWith(dir) && name.length() > dir.length()) {
+                return dir;
+            }
+        }
+        return null;
+    }
+
+    String layerOf(String name) {
+        String named = exact.get(name);
+        if (named != null) {
+            return named;
+        }
+        String last = null;
+        for (Map.Entry<String, List<String>> layer : layers.entrySet()) {
+            for (String rule : layer.getValue()) {
+                if (rule.endsWith("/") && name.startsWith(rule)) {
+                    return layer.getKey();
+                }
+            }
+            last = layer.getKey();
+        }
+        return last;
+    }
+
+    /**
+     * 把 zip 中的条目展开到 dir 下各层的目录中。dir 中这些层原有的内容先删除，不会残留上次构建中已移除的文件。
+     */
+    void extract(MappedZipFile zip, File dir) throws IOException {
+        for (String layer : layers.keySet()) {
+            delete(new File(dir, layer).toPath());
+        }
+        Files.createDirectories(dir.toPath());
+        for (MappedZipFile.Entry entry : zip.entries()) {
+            // 目录随其中的文件创建，目录条目本身（如 loader 的上级目录 org/）不单独展开，避免在其他层留下空目录
+            if (entry.isDirectory()) {
+                continue;
+            }
+            String layer = layerOf(entry.getName());
+            Path root = new File(dir, layer).toPath().toAbsolutePath().normalize();
+            Path target = root.resolve(entry.getName()).normalize();
+            if (!target.startsWith(root)) {
+                throw new ZipException("entry outside of layer directory: " + entry.getName());
+            }
+            long[] total = totals.get(layer);
+            total[2] = Math.max(total[2], entry.getTime());
+            Files.createDirectories(target.getParent());
+            long t = Metrics.start();
+            write(zip, entry, target);
+            Files.setLastModifiedTime(target, FileTime.fromMillis(entry.getTime()));
+            Metrics.stop(Metrics.Phase.LAYERS, t, entry.getSize());
+            total[0]++;
+            total[1] += entry.getSize();
+        }
+        for (Map.Entry<String, long[]> e : totals.entrySet()) {
+            Path root = new File(dir, e.getKey()).toPath();
+            if (Files.isDirectory(root)) {
+                touchDirectories(root, e.getValue()[2]);
+            }
+        }
+        Files.write(new File(dir, INDEX_NAME).toPath(), toIndex().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void touchDirectories(Path root, long time) throws IOException {
+        FileTime fileTime = FileTime.fromMillis(time);
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.setLastModifiedTime(d, fileTime);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void write(MappedZipFile zip, MappedZipFile.Entry entry, Path target) throws IOException {
+        if (entry.getMethod() == ZipEntry.STORED) {
+            // lib 下的嵌套 jar 均为 STORED，直接写出映射的数据
+            ByteBuffer data = zip.rawData(entry);
+            try (FileChannel ch = FileChannel.open(target, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (data.hasRemaining()) {
+                    ch.write(data);
+                }
+            }
+            return;
+        }
+        byte[] buffer = BufferPool.acquire(64 * 1024);
+        try (InputStream in = zip.open(entry); OutputStream out = Files.newOutputStream(target)) {
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    private static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    String toIndex() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, List<String>> layer : layers.entrySet()) {
+            sb.append("- \"").append(layer.getKey()).append("\":\n");
+            for (String rule : layer.getValue()) {
+                sb.append("  - \"").append(rule).append("\"\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 各层的文件数与大小，例如 {@code dependencies: 42 files, 5012345 bytes}。
+     */
+    String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, long[]> e : totals.entrySet()) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(String.format("  %-22s %6d files %14d bytes", e.getKey(), e.getValue()[0], e.getValue()[1]));
+        }
+        return sb.toString();
+    }
+}
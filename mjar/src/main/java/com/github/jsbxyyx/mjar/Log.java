@@ -0,0 +1,183 @@
+package com.github.jsbxyyx.mjar;
+
+import java.io.PrintStream;
+
+/**
+ * 命令行输出：所有内容先收集在同一个缓冲中，满 {@link #BUFFER_SIZE} 或 {@link #flush()} 时才整块写到 {@link System#out}，
+ * 大量逐条目输出时不会被缓慢的控制台拖慢；统计行与每个归档的输出块写出后立即 flush，长时间的批量处理中也能及时看到进度。
+ * 每次写出时才取 System.out，因此 {@link System#setOut} 同样生效。方法均为同步方法，多个工作线程同时调用时每行保持完整；
+ * 目录树由读取归档的线程按条目顺序输出，因此顺序是确定的。
+ * <p>
+ * 同时处理多个归档时，每个归档的线程用 {@link #beginCapture()} 把自己的输出收集起来，
+ * 由调用方按确定的顺序用 {@link #emit(String)} 整段写出，各归档的目录树不会交错。
+ */
+public final class Log {
+
+    public enum Level {
+        // 只输出错误
+        QUIET,
+        // 开始、结束与统计信息
+        SUMMARY,
+        // 加上需要加密/打补丁的 class 与嵌套归档组成的目录树
+        TREE,
+        // 加上所有条目
+        DEBUG
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // 尚未写到 System.out 的输出，由 Log.class 保护
+    private static final StringBuilder pending = new StringBuilder(BUFFER_SIZE);
+    private static final String NEWLINE = System.lineSeparator();
+    private static volatile Level level = Level.TREE;
+    // 各层缩进的缓存，prefixes[d] 为 d 个 "│   "；只整体替换，收集输出的线程不加锁读取
+    private static volatile String[] prefixes = {""};
+    // 当前线程的输出缓冲，不为 null 时输出先收集在其中
+    private static final ThreadLocal<StringBuilder> captured = new ThreadLocal<>();
+
+    private Log() {
+    }
+
+    public static void setLevel(Level l) {
+        level = l;
+    }
+
+    /**
+     * 解析 --log= 的取值（quiet / summary / tree / debug，大小写不敏感），无法识别时返回 null。
+     */
+    public static Level parse(String value) {
+        for (Level l : Level.values()) {
+            if (l.name().equalsIgnoreCase(value)) {
+                return l;
+            }
+        }
+        return null;
+    }
+
+    public static boolean isEnabled(Level l) {
+        return level.compareTo(l) >= 0 && l != Level.QUIET;
+    }
+
+    public static void summary(String line) {
+        if (isEnabled(Level.SUMMARY)) {
+            append(line);
+            flushUnlessCaptured();
+        }
+    }
+
+    public static void tree(String line) {
+        if (isEnabled(Level.TREE)) {
+            append(line);
+        }
+    }
+
+    public static void debug(String line) {
+        if (isEnabled(Level.DEBUG)) {
+            append(line);
+        }
+    }
+
+    /**
+     * 按层级格式化一行目录树（含换行）：depth 层缩进后接 "├── " 与内容；级别未开启时返回 null。
+     * 由调用方在写出条目时交给 {@link #emit(String)}，目录树的顺序与写出顺序一致。
+     */
+    public static String treeLine(Level l, int depth, String line) {
+        return isEnabled(l) ? prefix(depth) + "├── " + line + NEWLINE : null;
+    }
+
+    /**
+     * 与级别无关的输出（用法、参数错误、--plan 的结果），与其他输出经同一个缓冲，保持先后顺序。
+     */
+    public static void print(String text) {
+        emit(text);
+        flushUnlessCaptured();
+    }
+
+    public static void println(String line) {
+        print(line + NEWLINE);
+    }
+
+    public static synchronized void flush() {
+        PrintStream out = System.out;
+        if (pending.length() > 0) {
+            out.print(pending);
+            pending.setLength(0);
+        }
+        out.flush();
+    }
+
+    private static void flushUnlessCaptured() {
+        if (captured.get() == null) {
+            flush();
+        }
+    }
+
+    /**
+     * 开始收集当前线程的输出，返回原先的缓冲（没有时为 null），收集结束时交给 {@link #endCapture(StringBuilder)}。
+     */
+    static StringBuilder beginCapture() {
+        StringBuilder previous = captured.get();
+        captured.set(new StringBuilder());
+        return previous;
+    }
+
+    /**
+     * 结束收集并恢复原先的缓冲，返回收集到的输出。
+     */
+    static String endCapture(StringBuilder previous) {
+        String text = captured.get().toString();
+        if (previous == null) {
+            captured.remove();
+        } else {
+            captured.set(previous);
+        }
+        return text;
+    }
+
+    /**
+     * 写出一段收集到的输出；当前线程也在收集时追加到它的缓冲中。
+     */
+    static void emit(String text) {
+        if (text.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = captured.get();
+        if (sb != null) {
+            sb.append(text);
+            return;
+        }
+        synchronized (Log.class) {
+            pending.append(text);
+            if (pending.length() >= BUFFER_SIZE) {
+                flush();
+            }
+        }
+    }
+
+    private static void append(String line) {
+        StringBuilder sb = captured.get();
+        if (sb != null) {
+            sb.append(line).append(NEWLINE);
+            return;
+        }
+        synchronized (Log.class) {
+            pending.append(line).append(NEWLINE);
+            if (pending.length() >= BUFFER_SIZE) {
+                flush();
+            }
+        }
+    }
+
+    private static String prefix(int depth) {
+        String[] p = prefixes;
+        if (depth < p.length) {
+            return p[depth];
+        }
+        String[] grown = new String[depth + 1];
+        System.arraycopy(p, 0, grown, 0, p.length);
+        for (int d = p.length; d <= depth; d++) {
+            grown[d] = grown[d - 1] + "│   ";
+        }
+        prefixes = grown;
+        return grown[depth];
+    }
+}
@@ -0,0 +1,449 @@
+package com.github.jsbxyyx.mjar;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * 基于中央目录的随机访问 zip 读取器。
+ * 源文件通过 {@link FileChannel#map} 映射到内存，不占用堆；嵌套的 STORED jar 可以直接
+ * 包装父归档中的数据切片，无需复制。所有读取方法都是线程安全的，可以在多个线程中并行解压。
+ */
+public class MappedZipFile implements Closeable {
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int END_HEADER_SIZE = 22;
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private final FileChannel channel;
+    private final ByteBuffer[] segments;
+    private final long length;
+    private final List<Entry> entries;
+    private final Map<String, Entry> byName;
+
+    private MappedZipFile(FileChannel channel, ByteBuffer[] segments, long length) throws IOException {
+        this.channel = channel;
+        this.segments = segments;
+        this.length = length;
+        this.entries = readCentralDirectory();
+        this.byName = new LinkedHashMap<>(entries.size() * 2);
+        for (Entry e : entries) {
+            byName.putIfAbsent(e.name, e);
+        }
+    }
+
+    public static MappedZipFile open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel channel = raf.getChannel();
+        try {
+            long size = channel.size();
+            int count = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            ByteBuffer[] segments = new ByteBuffer[Math.max(count, 1)];
+            for (int i = 0; i < count; i++) {
+                long start = i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+            if (count == 0) {
+                segments[0] = ByteBuffer.allocate(0);
+            }
+            return new MappedZipFile(channel, segments, size);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 把内存中的数据（例如父归档中 STORED 的嵌套 jar）当作 zip 读取，不复制数据。
+     */
+    public static MappedZipFile wrap(ByteBuffer buffer) throws IOException {
+        return new MappedZipFile(null, new ByteBuffer[]{buffer.slice()}, buffer.remaining());
+    }
+
+    /**
+     * 按本地文件头在归档中的位置排序，与 {@link java.util.jar.JarInputStream} 的遍历顺序一致。
+     */
+    public List<Entry> entries() {
+        return entries;
+    }
+
+    public Entry getEntry(String name) {
+        return byName.get(name);
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public Manifest getManifest() throws IOException {
+        for (Entry e : entries) {
+            if (JarFile.MANIFEST_NAME.equalsIgnoreCase(e.name)) {
+                return new Manifest(new ByteArrayInputStream(read(e)));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 条目的原始（压缩后）数据，返回的 buffer 是独立的只读视图。
+     */
+    public ByteBuffer rawData(Entry entry) throws IOException {
+        long dataOffset = entry.dataOffset;
+        if (dataOffset < 0) {
+            ByteBuffer lh = slice(entry.localHeaderOffset, 30);
+            if (lh.getInt(0) != LOCAL_HEADER_SIG) {
+                throw new ZipException("invalid local header: " + entry.name);
+            }
+            dataOffset = entry.localHeaderOffset + 30 + (lh.getShort(26) & 0xFFFF) + (lh.getShort(28) & 0xFFFF);
+            entry.dataOffset = dataOffset;
+        }
+        if (entry.compressedSize > Integer.MAX_VALUE) {
+            throw new ZipException("entry too large: " + entry.name);
+        }
+        return slice(dataOffset, (int) entry.compressedSize);
+    }
+
+    /**
+     * 以流的方式解压条目，用于不适合整体读入内存的大条目。
+     */
+    public InputStream open(Entry entry) throws IOException {
+        InputStream raw = new ByteBufferInputStream(rawData(entry));
+        if (entry.method == ZipEntry.STORED) {
+            return raw;
+        }
+        if (entry.method != ZipEntry.DEFLATED) {
+            throw new ZipException("unsupported compression method " + entry.method + ": " + entry.name);
+        }
+        // Inflater 与输入缓冲区在 close() 时归还，未关闭的流只是让它们交给 GC
+        return new InflaterInputStream(raw, ZipCodecs.inflater(), 1) {
+            private boolean eof;
+            private boolean closed;
+
+            {
+                buf = BufferPool.acquire(64 * 1024);
+            }
+
+            @Override
+            protected void fill() throws IOException {
+                if (eof) {
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+                len = in.read(buf, 0, buf.length);
+                if (len == -1) {
+                    // nowrap 模式下需要额外的一个字节才能结束
+                    buf[0] = 0;
+                    len = 1;
+                    eof = true;
+                }
+                inf.setInput(buf, 0, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    ZipCodecs.release(inf);
+                    BufferPool.release(buf);
+                    super.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * 读取并解压条目，数组大小直接取自中央目录中的原始大小。
+     */
+    public byte[] read(Entry entry) throws IOException {
+        if (entry.size > Integer.MAX_VALUE - 8) {
+            throw new ZipException("entry too large: " + entry.name);
+        }
+        ByteBuffer raw = rawData(entry);
+        byte[] out = new byte[(int) entry.size];
+        if (entry.method == ZipEntry.STORED) {
+            raw.get(out);
+            return out;
+        }
+        if (entry.method != ZipEntry.DEFLATED) {
+            throw new ZipException("unsupported compression method " + entry.method + ": " + entry.name);
+        }
+        // 压缩数据不整体复制：堆内数据直接作为输入，映射的数据分段复制到池中的缓冲区
+        byte[] chunk = raw.hasArray() ? null : BufferPool.acquire(Math.min(raw.remaining(), 64 * 1024));
+        Inflater inflater = ZipCodecs.inflater();
+        try {
+            if (chunk == null) {
+                inflater.setInput(raw.array(), raw.arrayOffset() + raw.position(), raw.remaining());
+            }
+            int n = 0;
+            while (n < out.length) {
+                if (inflater.needsInput() && chunk != null && raw.hasRemaining()) {
+                    int len = Math.min(raw.remaining(), chunk.length);
+                    raw.get(chunk, 0, len);
+                    inflater.setInput(chunk, 0, len);
+                }
+                int r = inflater.inflate(out, n, out.length - n);
+                if (r == 0 && (inflater.finished() || inflater.needsDictionary()
+                        || (inflater.needsInput() && (chunk == null || !raw.hasRemaining())))) {
+                    break;
+                }
+                n += r;
+            }
+            if (n != out.length) {
+                throw new ZipException("invalid entry size: " + entry.name);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("invalid deflate data: " + entry.name + " " + e.getMessage());
+        } finally {
+            ZipCodecs.release(inflater);
+            BufferPool.release(chunk);
+        }
+        return out;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer slice(long offset, int len) throws IOException {
+        if (offset < 0 || offset + len > length) {
+            throw new ZipException("offset out of range: " + offset);
+        }
+        int idx = (int) (offset / SEGMENT_SIZE);
+        long segStart = idx * SEGMENT_SIZE;
+        ByteBuffer b;
+        if (segments.length == 1) {
+            b = segments[0].duplicate();
+            b.position((int) offset).limit((int) offset + len);
+        } else if (offset + len <= segStart + segments[idx].capacity()) {
+            b = segments[idx].duplicate();
+            b.position((int) (offset - segStart)).limit((int) (offset - segStart) + len);
+        } else {
+            // 跨越两个映射段的条目单独映射
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, len).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        int tailLen = (int) Math.min(length, END_HEADER_SIZE + 0xFFFF);
+        ByteBuffer tail = slice(length - tailLen, tailLen);
+        int end = -1;
+        for (int i = tailLen - END_HEADER_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIG) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new ZipException("zip END header not found");
+        }
+        long count = tail.getShort(end + 10) & 0xFFFF;
+        long cdSize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long cdOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        long endOffset = length - tailLen + end;
+        // 中央目录紧接在 END 记录（ZIP64 时为 zip64 END 记录）之前
+        long cdEnd = endOffset;
+        if (endOffset >= 20) {
+            ByteBuffer locator = slice(endOffset - 20, 20);
+            if (locator.getInt(0) == ZIP64_LOCATOR_SIG) {
+                long z64Pos = zip64EndPosition(endOffset - 20, locator.getLong(8));
+                ByteBuffer z64 = slice(z64Pos, 56);
+                count = z64.getLong(32);
+                cdSize = z64.getLong(40);
+                cdOffset = z64.getLong(48);
+                cdEnd = z64Pos;
+            }
+        }
+        // 有前置数据（如可执行 jar 的启动脚本）时，偏移需要整体修正
+        long base = cdEnd - cdSize - cdOffset;
+        if (base < 0 || cdSize > Integer.MAX_VALUE) {
+            throw new ZipException("invalid central directory");
+        }
+        ByteBuffer cd = slice(base + cdOffset, (int) cdSize);
+        List<Entry> list = new ArrayList<>((int) Math.min(count, 1 << 20));
+        int p = 0;
+        for (long i = 0; i < count; i++) {
+            if (cd.getInt(p) != CENTRAL_HEADER_SIG) {
+                throw new ZipException("invalid central directory header");
+            }
+            int method = cd.getShort(p + 10) & 0xFFFF;
+            long dosTime = cd.getInt(p + 12) & 0xFFFFFFFFL;
+            long crc = cd.getInt(p + 16) & 0xFFFFFFFFL;
+            long csize = cd.getInt(p + 20) & 0xFFFFFFFFL;
+            long size = cd.getInt(p + 24) & 0xFFFFFFFFL;
+            int nameLen = cd.getShort(p + 28) & 0xFFFF;
+            int extraLen = cd.getShort(p + 30) & 0xFFFF;
+            int commentLen = cd.getShort(p + 32) & 0xFFFF;
+            long offset = cd.getInt(p + 42) & 0xFFFFFFFFL;
+            byte[] nameBytes = new byte[nameLen];
+            cd.position(p + 46);
+            cd.get(nameBytes);
+            int x = p + 46 + nameLen;
+            int extraEnd = x + extraLen;
+            while (x + 4 <= extraEnd) {
+                int id = cd.getShort(x) & 0xFFFF;
+                int len = cd.getShort(x + 2) & 0xFFFF;
+                if (id == ZIP64_EXTRA_ID) {
+                    int q = x + 4;
+                    if (size == 0xFFFFFFFFL) {
+                        size = cd.getLong(q);
+                        q += 8;
+                    }
+                    if (csize == 0xFFFFFFFFL) {
+                        csize = cd.getLong(q);
+                        q += 8;
+                    }
+                    if (offset == 0xFFFFFFFFL) {
+                        offset = cd.getLong(q);
+                    }
+                }
+                x += 4 + len;
+            }
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            list.add(new Entry(name, method, dosTime, crc, csize, size, base + offset));
+            p += 46 + nameLen + extraLen + commentLen;
+        }
+        list.sort(Comparator.comparingLong(e -> e.localHeaderOffset));
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * zip64 END 记录的实际位置。locator 中记录的偏移不含前置数据：没有扩展数据时记录紧接在 locator 之前，
+     * 由此得出前置数据的长度；否则按记录的偏移读取。
+     */
+    private long zip64EndPosition(long locatorPos, long recorded) throws IOException {
+        long adjacent = locatorPos - 56;
+        if (adjacent >= recorded && slice(adjacent, 4).getInt(0) == ZIP64_END_SIG) {
+            return adjacent;
+        }
+        if (recorded >= 0 && recorded + 56 <= locatorPos && slice(recorded, 4).getInt(0) == ZIP64_END_SIG) {
+            return recorded;
+        }
+        throw new ZipException("invalid zip64 END header");
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    public static final class Entry {
+        final String name;
+        final int method;
+        final long dosTime;
+        final long crc;
+        final long compressedSize;
+        final long size;
+        final long localHeaderOffset;
+        volatile long dataOffset = -1;
+
+        Entry(String name, int method, long dosTime, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public long getTime() {
+            try {
+                LocalDateTime d = LocalDateTime.of(
+                        (int) ((dosTime >> 25) & 0x7f) + 1980,
+                        (int) ((dosTime >> 21) & 0x0f),
+                        (int) ((dosTime >> 16) & 0x1f),
+                        (int) ((dosTime >> 11) & 0x1f),
+                        (int) ((dosTime >> 5) & 0x3f),
+                        (int) ((dosTime << 1) & 0x3e));
+                return d.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (RuntimeException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.github.jsbxyyx.mjar;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 各阶段的耗时与数据量统计。计数器为 {@link LongAdder}，工作线程并发累加时没有竞争；
+ * 每次计时只有两次 System.nanoTime 调用。各阶段的耗时是所有线程累加的时间，多线程时总和可能超过墙钟时间。
+ */
+public final class Metrics {
+
+    public enum Phase {
+        READ("read/inflate"),
+        PATCH("asm patch"),
+        ENCRYPT("encrypt"),
+        COMPRESS("deflate"),
+        CRC("crc32"),
+        CACHE("cache"),
+        SCAN("scan metadata"),
+        WRITE("disk write"),
+        LAYERS("layer extract");
+
+        final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final int PHASES = Phase.values().length;
+    private static final LongAdder[] nanos = adders(PHASES);
+    private static final LongAdder[] bytes = adders(PHASES);
+    private static final LongAdder[] calls = adders(PHASES);
+    private static final LongAdder entries = new LongAdder();
+    private static final LongAdder skippedArchives = new LongAdder();
+    private static final LongAdder skippedArchiveBytes = new LongAdder();
+    private static final LongAdder scanMetadataClasses = new LongAdder();
+    private static final LongAdder warmupClasses = new LongAdder();
+
+    private Metrics() {
+    }
+
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * 记录一次从 start 开始的 phase，处理的数据量为 n 字节。
+     */
+    public static void stop(Phase phase, long start, long n) {
+        int i = phase.ordinal();
+        nanos[i].add(System.nanoTime() - start);
+        bytes[i].add(n);
+        calls[i].increment();
+    }
+
+    public static void entry() {
+        entries.increment();
+    }
+
+    public static void skippedArchive(long compressedSize) {
+        skippedArchives.increment();
+        skippedArchiveBytes.add(compressedSize);
+    }
+
+    public static long skippedArchives() {
+        return skippedArchives.sum();
+    }
+
+    public static long skippedArchiveBytes() {
+        return skippedArchiveBytes.sum();
+    }
+
+    /**
+     * 写入 --scan-metadata 的加密 class 数。
+     */
+    public static void scanMetadata(int classes) {
+        scanMetadataClasses.add(classes);
+    }
+
+    public static long scanMetadataClasses() {
+        return scanMetadataClasses.sum();
+    }
+
+    /**
+     * 写入 --trace 预热列表的加密 class 数。
+     */
+    public static void warmup(int classes) {
+        warmupClasses.add(classes);
+    }
+
+    public static long warmupClasses() {
+        return warmupClasses.sum();
+    }
+
+    /**
+     * 统计写入字节数与写入耗时的输出流，用于最外层的输出文件。
+     */
+    public static OutputStream timed(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                long t = start();
+                out.write(b);
+                stop(Phase.WRITE, t, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                long t = start();
+                out.write(b, off, len);
+                stop(Phase.WRITE, t, len);
+            }
+        };
+    }
+
+    /**
+     * 所有堆内存池的峰值使用量之和。
+     */
+    public static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * 汇总表：每个阶段的调用次数、累计耗时、数据量与吞吐量，以及总体的输入输出与条目速率。
+     */
+    public static String report(long wallNanos, long bytesIn, long bytesOut) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-14s %10s %12s %14s %10s%n", "phase", "calls", "time (ms)", "bytes", "MB/s"));
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            long n = calls[i].sum();
+            if (n == 0) {
+                continue;
+            }
+            long t = nanos[i].sum();
+            long b = bytes[i].sum();
+            sb.append(String.format("%-14s %10d %12.1f %14d %10.1f%n",
+                    phase.label, n, t / 1e6, b, t > 0 ? b / (t / 1e9) / (1 << 20) : 0.0));
+        }
+        double seconds = wallNanos / 1e9;
+        sb.append(String.format("wall: %.1f ms, in: %d bytes, out: %d bytes, entries: %d (%.0f/s), peak heap: %d MB",
+                wallNanos / 1e6, bytesIn, bytesOut, entries.sum(), seconds > 0 ? entries.sum() / seconds : 0.0,
+                peakHeap() >> 20));
+        return sb.toString();
+    }
+
+    /**
+     * @param archives 批量模式下各归档的结果（JSON 数组），单个归档时为 null
+     */
+    public static String toJson(long wallNanos, long bytesIn, long bytesOut, TransformCache cache, String archives) {
+        StringBuilder sb = new StringBuilder("{\n");
+        sb.append("  \"wallMillis\": ").append(wallNanos / 1_000_000).append(",\n");
+        sb.append("  \"bytesIn\": ").append(bytesIn).append(",\n");
+        sb.append("  \"bytesOut\": ").append(bytesOut).append(",\n");
+        sb.append("  \"entries\": ").append(entries.sum()).append(",\n");
+        sb.append("  \"entriesPerSecond\": ").append(wallNanos > 0 ? entries.sum() * 1_000_000_000L / wallNanos : 0).append(",\n");
+        sb.append("  \"peakHeapBytes\": ").append(peakHeap()).append(",\n");
+        sb.append("  \"skippedArchives\": ").append(skippedArchives.sum()).append(",\n");
+        sb.append("  \"skippedArchiveBytes\": ").append(skippedArchiveBytes.sum()).append(",\n");
+        sb.append("  \"scanMetadataClasses\": ").append(scanMetadataClasses.sum()).append(",\n");
+        sb.append("  \"warmupClasses\": ").append(warmupClasses.sum()).append(",\n");
+        if (cache != null) {
+            sb.append("  \"cache\": {\"hits\": ").append(cache.getHits())
+                    .append(", \"misses\": ").append(cache.getMisses())
+                    .append(", \"hitBytes\": ").append(cache.getHitBytes())
+                    .append(", \"evicted\": ").append(cache.getEvicted()).append("},\n");
+        }
+        if (archives != null) {
+            sb.append("  \"archives\": ").append(archives).append(",\n");
+        }
+        sb.append("  \"phases\": {");
+        boolean first = true;
+        for (Phase phase : Phase.values()) {
+            int i = phase.ordinal();
+            sb.append(first ? "\n" : ",\n");
+            first = false;
+            sb.append("    \"").append(phase.name().toLowerCase()).append("\": {\"calls\": ").append(calls[i].sum())
+                    .append(", \"nanos\": ").append(nanos[i].sum())
+                    .append(", \"bytes\": ").append(bytes[i].sum()).append('}');
+        }
+        sb.append("\n  }\n}\n");
+        return sb.toString();
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] a = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = new LongAdder();
+        }
+        return a;
+    }
+}
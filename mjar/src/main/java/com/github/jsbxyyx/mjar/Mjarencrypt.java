@@ -0,0 +1,51 @@
+package com.github.jsbxyyx.mjar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class Mjarencrypt implements Encryptor {
+    public native byte[] encrypt(byte[] bArr);
+
+    static {
+        System.load(libraryPath());
+    }
+
+    /**
+     * 原生库文件内容的 SHA-256，替换库文件后旧的缓存结果不再命中。
+     */
+    @Override
+    public String identity() {
+        File lib = new File(libraryPath());
+        if (!lib.isFile()) {
+            return lib.getAbsolutePath();
+        }
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return TransformCache.hex(md.digest(Files.readAllBytes(lib.toPath())));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 原生库的完整路径：系统属性 LIB_MJAR_PATH 指定的目录，未设置时为 user.dir。
+     */
+    public static String libraryPath() {
+        String suffix;
+        String os = System.getProperty("os.name").toLowerCase();
+        if (os.indexOf("windows") > -1) {
+            suffix = ".dll";
+        } else if (os.indexOf("mac") > -1) {
+            suffix = ".dylib";
+        } else {
+            suffix = ".so";
+        }
+        return System.getProperty("LIB_MJAR_PATH", System.getProperty("user.dir")) + "/libmjar" + suffix;
+    }
+}
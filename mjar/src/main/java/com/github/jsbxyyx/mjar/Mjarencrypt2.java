@@ -0,0 +1,440 @@
+package com.github.jsbxyyx.mjar;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+public class Mjarencrypt2 {
+    private static final String BOOT_INFO_CLASSES = "/BOOT-INF/classes";
+    private static final String BOOT_INFO_LIB = "/BOOT-INF/lib";
+    private static final String SPRING_FACTORIES = "META-INF/spring.factories";
+    private static final String SPRING_HANDLERS = "META-INF/spring.handlers";
+    private static final String SPRING_SCHEMAS = "META-INF/spring.schemas";
+    private static final String SERVICES_PATH = "META-INF/services";
+    private static final String SPRING_BOOT_PKG = "org.springframework.boot";
+    // 嵌套 jar 中的 manifest 不复制到输出，按名称结尾匹配（与原先的 (.*)?META-INF/MANIFEST\.MF 一致）
+    public static final String MANIFEST_MF = "META-INF/MANIFEST.MF";
+    // 不复制到输出的签名文件，glob 规则见 PackageMatcher
+    public static final List<String> META_INF_IGNORE_LIST = newList(
+            "META-INF/**.SF"
+            , "META-INF/**.sf"
+            , "META-INF/**.DSA"
+            , "META-INF/**.dsa"
+            , "META-INF/**.RSA"
+            , "META-INF/**.rsa"
+            , "META-INF/**.EC"
+            , "META-INF/**.ec");
+    private static final PackageMatcher META_INF_IGNORE = PackageMatcher.compile(META_INF_IGNORE_LIST, new ArrayList<>());
+    private static final Set<String> IGNORE_ENCRYPT_CLASS = newSet();
+    private static final String MAYBE_DECRYPT_METHOD_NAME = "maybeDecrypt";
+    private static final String MAYBE_DECRYPT_METHOD_DESC = "([BI)[B";
+    private static PackageMatcher encryptMatcher = PackageMatcher.none();
+    private static Encryptor mjarencrypt;
+    // --reproducible：所有条目使用的修改时间，-1 表示沿用源归档中的时间
+    private static long fixedTime = -1;
+
+    public static void main(String[] args) throws Exception {
+        try {
+            run(args);
+        } finally {
+            Log.flush();
+        }
+    }
+
+    private static void run(String[] args) throws Exception {
+        if (args == null || args.length < 2) {
+            Log.println("usage: java -jar mjar.jar com/github/jsbxyyx[,...] xx.jar [DEBUG] [--exclude=PATTERN[,...]] [--encryptor=NAME] [--log=quiet|summary|tree|debug] [--reproducible]");
+            return;
+        }
+        List<String> excludes = new ArrayList<>(IGNORE_ENCRYPT_CLASS);
+        String encryptorName = "native";
+        File file = new File(args[1]);
+        for (int i = 2; i < args.length; i++) {
+            if ("DEBUG".equalsIgnoreCase(args[i])) {
+                Log.setLevel(Log.Level.DEBUG);
+            } else if (args[i].startsWith("--log=")) {
+                Log.Level level = Log.parse(args[i].substring("--log=".length()));
+                if (level == null) {
+                    Log.println("Invalid log level: " + args[i]);
+                    return;
+                }
+                Log.setLevel(level);
+            } else if (args[i].startsWith("--exclude=")) {
+                excludes.addAll(PackageMatcher.parse(args[i].substring("--exclude=".length())));
+            } else if (args[i].startsWith("--encryptor=")) {
+                encryptorName = args[i].substring("--encryptor=".length());
+            } else if ("--reproducible".equals(args[i])) {
+                fixedTime = Reproducible.time();
+            } else if (args[i].startsWith("--")) {
+                Log.println("Unknown option: " + args[i]);
+                return;
+            }
+        }
+        Log.summary("args : " + Arrays.toString(args));
+        mjarencrypt = EncryptorProvider.load(encryptorName);
+        if (fixedTime != -1) mjarencrypt = Reproducible.encryptor(mjarencrypt);
+        encryptMatcher = PackageMatcher.compile(PackageMatcher.parse(args[0]), excludes);
+        String WORK_DIR = normalize(file.getAbsolutePath().substring(0, file.getAbsolutePath().lastIndexOf(File.separator)));
+        String filename = file.getName().substring(0, file.getName().lastIndexOf("."));
+        String encFilename = WORK_DIR + "/" + filename + "-enc.jar";
+        try (MappedZipFile zip = MappedZipFile.open(file)) {
+            Manifest manifest = zip.getManifest();
+            Attributes mainAttributes = manifest.getMainAttributes();
+            String mainClass = mainAttributes.getValue("main-class");
+            String startClass = mainAttributes.getValue("start-class");
+            Log.summary("main-class : " + mainClass);
+            Log.summary("start-class : " + startClass);
+            boolean springboot = mainClass.startsWith(SPRING_BOOT_PKG);
+            Log.summary("springboot : " + springboot);
+            Log.summary("writeJar : " + encFilename);
+            try (OutputStream os = new FileOutputStream(encFilename)) {
+                mergeJar(zip, springboot, manifest, os);
+            }
+        }
+        Log.summary("final filename : " + encFilename);
+    }
+
+    /**
+     * 供基准测试使用：不解析命令行，直接设置加密的包前缀与加密器。
+     */
+    static void setup(String pkgPrefix, Encryptor encryptor) {
+        mjarencrypt = encryptor;
+        encryptMatcher = PackageMatcher.compile(PackageMatcher.parse(pkgPrefix), new ArrayList<>(IGNORE_ENCRYPT_CLASS));
+    }
+
+    /**
+     * 把 fat jar（含嵌套依赖）展开合并后直接写到 os，不经过临时目录，堆上只保留需要合并的元数据文件。
+     * <p>
+     * 先扫描一遍各级中央目录，统计每个路径出现的次数；正式写出时同一路径只在最后一次出现时写出，
+     * 与原先后出现的覆盖先出现的一致。spring.factories、spring.handlers、spring.schemas 与 META-INF/services
+     * 在内存中合并，最后统一写出。目录条目在第一次遇到时写出，文件的上级目录在文件之前补齐。
+     * 压缩过的嵌套 jar 两遍都要解压，解压结果暂存在 Spool 中。
+     */
+    static void mergeJar(MappedZipFile zip, boolean spring, Manifest manifest, OutputStream os) throws Exception {
+        Map<String, int[]> remaining = new HashMap<>();
+        parseJar(zip, spring, false, (key, z, entry) -> {
+            if (!key.endsWith("/") && !isMergeable(key)) {
+                remaining.computeIfAbsent(key, k -> new int[1])[0]++;
+            }
+        });
+
+        Set<String> dirs = new HashSet<>();
+        Map<String, byte[]> metadata = new LinkedHashMap<>();
+        JarOutputStream target;
+        if (fixedTime == -1) {
+            target = new JarOutputStream(new BufferedOutputStream(os, 64 * 1024), manifest);
+        } else {
+            // 与 JarOutputStream(out, manifest) 相同，只是 manifest 的时间固定
+            target = new JarOutputStream(new BufferedOutputStream(os, 64 * 1024));
+            target.putNextEntry(newEntry(JarFile.MANIFEST_NAME, fixedTime));
+            manifest.write(target);
+            target.closeEntry();
+        }
+        parseJar(zip, spring, true, (key, z, entry) -> {
+            if (key.endsWith("/")) {
+                addDirectories(target, dirs, key.substring(1));
+                return;
+            }
+            if (isMergeable(key)) {
+                byte[] data = z.read(entry);
+                byte[] existing = metadata.get(key);
+                metadata.put(key, existing == null ? data : merge(key, existing, data));
+                return;
+            }
+            if (--remaining.get(key)[0] > 0) {
+                Log.debug("overridden : " + key);
+                return;
+            }
+            String name = key.substring(1);
+            addDirectories(target, dirs, name);
+            Log.debug("add [" + name + "] to jar.");
+            target.putNextEntry(newEntry(name, entry.getTime()));
+            if (key.endsWith(".class")) {
+                target.write(transformClass(key, z.read(entry)));
+            } else {
+                copy(z, entry, target);
+            }
+            target.closeEntry();
+        });
+        for (Map.Entry<String, byte[]> e : metadata.entrySet()) {
+            String name = e.getKey().substring(1);
+            addDirectories(target, dirs, name);
+            Log.debug("add [" + name + "] to jar.");
+            target.putNextEntry(newEntry(name, -1));
+            target.write(e.getValue());
+            target.closeEntry();
+        }
+        target.finish();
+        target.flush();
+    }
+
+    // 展开后的一个条目，key 为归一化后以 "/" 开头的路径
+    interface EntryVisitor {
+        void visit(String key, MappedZipFile zip, MappedZipFile.Entry entry) throws Exception;
+    }
+
+    /**
+     * 按顺序遍历归档及其嵌套 jar 中的条目（不含忽略的签名文件与 manifest），Spring Boot 的
+     * BOOT-INF/classes、BOOT-INF/lib 前缀被去掉。
+     */
+    static void parseJar(MappedZipFile zip, boolean spring, boolean log, EntryVisitor visitor) throws Exception {
+        for (MappedZipFile.Entry nextEntry : zip.entries()) {
+            String name = nextEntry.getName();
+            String key = "/" + name;
+            if (spring) {
+                if (key.indexOf(BOOT_INFO_CLASSES) == 0) {
+                    key = key.substring(key.indexOf(BOOT_INFO_CLASSES) + BOOT_INFO_CLASSES.length());
+                }
+                if (key.indexOf(BOOT_INFO_LIB) == 0) {
+                    key = key.substring(key.indexOf(BOOT_INFO_LIB) + BOOT_INFO_LIB.length());
+                }
+            }
+            if (key.toLowerCase().endsWith(".jar")) {
+                if (log) Log.tree("jar : " + key);
+                if (nextEntry.getMethod() == ZipEntry.STORED) {
+                    parseJar(MappedZipFile.wrap(zip.rawData(nextEntry)), spring, log, visitor);
+                    continue;
+                }
+                Spool in = Spool.stored();
+                try {
+                    try (InputStream is = zip.open(nextEntry)) {
+                        in.writeAll(is);
+                    }
+                    in.close();
+                    parseJar(MappedZipFile.wrap(in.toByteBuffer()), spring, log, visitor);
+                } finally {
+                    in.release();
+                }
+            } else if (key.endsWith(MANIFEST_MF) || META_INF_IGNORE.matches(key)) {
+                if (log) Log.tree("ignore : " + key);
+            } else {
+                if (log) Log.debug("classes : " + key);
+                visitor.visit(key, zip, nextEntry);
+            }
+        }
+    }
+
+    private static boolean isMergeable(String key) {
+        return key.endsWith(SPRING_FACTORIES) || key.endsWith(SPRING_SCHEMAS) || key.endsWith(SPRING_HANDLERS)
+                || key.indexOf(SERVICES_PATH) > -1;
+    }
+
+    private static byte[] merge(String key, byte[] existing, byte[] data) throws IOException {
+        if (key.endsWith(SPRING_FACTORIES)) {
+            Properties dataProperties = new Properties();
+            dataProperties.load(new ByteArrayInputStream(existing));
+            Properties properties = new Properties();
+            properties.load(new ByteArrayInputStream(data));
+            properties.forEach((k, v) -> {
+                String value = dataProperties.getProperty(k.toString());
+                dataProperties.setProperty(k.toString(), value != null ? value + "," + v.toString() : v.toString());
+            });
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            dataProperties.store(os, "Merged by JarBoot");
+            byte[] merged = os.toByteArray();
+            if (fixedTime != -1) {
+                // store 在注释之后写入当前时间的注释行，可重复构建时去掉
+                int first = indexOf(merged, (byte) '\n', 0);
+                int second = indexOf(merged, (byte) '\n', first + 1);
+                if (second > first) {
+                    byte[] stripped = new byte[merged.length - (second - first)];
+                    System.arraycopy(merged, 0, stripped, 0, first + 1);
+                    System.arraycopy(merged, second + 1, stripped, first + 1, merged.length - second - 1);
+                    merged = stripped;
+                }
+            }
+            return merged;
+        }
+        if (key.indexOf(SERVICES_PATH) > -1 && existing.length == 0) {
+            return data;
+        }
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream(existing.length + 1 + data.length);
+        byteStream.write(existing);
+        byteStream.write(10);
+        byteStream.write(data);
+        return byteStream.toByteArray();
+    }
+
+    private static byte[] transformClass(String key, byte[] data) {
+        if (key.endsWith("org/springframework/asm/ClassReader.class")) {
+            Log.tree("patch ClassReader : " + key);
+            data = patchClassReader("org/springframework/asm/ClassReader", data);
+        } else if (key.endsWith("org/objectweb/asm/ClassReader.class")) {
+            Log.tree("patch ClassReader : " + key);
+            data = patchClassReader("org/objectweb/asm/ClassReader", data);
+        }
+        int match = encryptMatcher.match(key);
+        if (match < 0) {
+            Log.tree("writeClass no enc : " + key);
+        } else if (match > 0) {
+            Log.tree("writeClass enc : " + key);
+            data = mjarencrypt.encrypt(data);
+        }
+        return data;
+    }
+
+    /**
+     * time 为 -1 时使用 JarEntry 的默认时间（写出时的当前时间）；可重复构建时一律使用固定时间。
+     */
+    private static JarEntry newEntry(String name, long time) {
+        JarEntry entry = new JarEntry(name);
+        if (fixedTime != -1) {
+            entry.setTime(fixedTime);
+        } else if (time != -1) {
+            entry.setTime(time);
+        }
+        return entry;
+    }
+
+    private static int indexOf(byte[] b, byte value, int from) {
+        for (int i = from; i < b.length; i++) {
+            if (b[i] == value) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 写出 name 的各级上级目录；name 本身以 '/' 结尾时也一并写出。已写出的目录记录在 dirs 中。
+     */
+    private static void addDirectories(JarOutputStream target, Set<String> dirs, String name) throws IOException {
+        for (int i = name.indexOf('/'); i >= 0; i = name.indexOf('/', i + 1)) {
+            String dir = name.substring(0, i + 1);
+            if (dir.length() > 1 && dirs.add(dir)) {
+                Log.debug("add [" + dir + "] to jar.");
+                target.putNextEntry(newEntry(dir, -1));
+                target.closeEntry();
+            }
+        }
+    }
+
+    private static void copy(MappedZipFile zip, MappedZipFile.Entry entry, OutputStream out) throws IOException {
+        byte[] buffer = BufferPool.acquire(64 * 1024);
+        try (InputStream in = zip.open(entry)) {
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * 不计算帧：其他方法按原字节复制，插入的指令不影响原有的栈映射帧，见 Mjarencrypt4.patchClassReader。
+     */
+    private static byte[] patchClassReader(final String clazz, byte[] original) {
+        ClassReader cr = new ClassReader(original);
+        ClassWriter cw = new ClassWriter(cr, 0);
+
+        ClassVisitor cv = new ClassVisitor(Opcodes.ASM9, cw) {
+            @Override
+            public void visitEnd() {
+                // public static native byte[] maybeDecrypt(byte[] buf, int offset);
+                MethodVisitor mv = cv.visitMethod(
+                        Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC + Opcodes.ACC_NATIVE,
+                        MAYBE_DECRYPT_METHOD_NAME,
+                        MAYBE_DECRYPT_METHOD_DESC,
+                        null,
+                        null
+                );
+                if (mv != null) mv.visitEnd();
+                super.visitEnd();
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc,
+                                             String signature, String[] exceptions) {
+                MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+                // 找到 (byte[] classFileBuffer, int classFileOffset, boolean check) 构造
+                if ("<init>".equals(name) && "([BIZ)V".equals(desc)) {
+                    Log.tree("patched " + clazz + "." + name + desc);
+                    return new MethodVisitor(api, mv) {
+                        @Override
+                        public void visitCode() {
+                            super.visitCode();
+                            // 在方法最开始插入：
+                            //   aload_1
+                            //   iload_2
+                            //   invokestatic ClassReader.maybeDecrypt([BI)[B
+                            //   astore_1
+                            mv.visitVarInsn(Opcodes.ALOAD, 1);
+                            mv.visitVarInsn(Opcodes.ILOAD, 2);
+                            mv.visitMethodInsn(
+                                    Opcodes.INVOKESTATIC,
+                                    clazz,
+                                    MAYBE_DECRYPT_METHOD_NAME,
+                                    MAYBE_DECRYPT_METHOD_DESC,
+                                    false);
+                            mv.visitVarInsn(Opcodes.ASTORE, 1);
+                        }
+
+                        @Override
+                        public void visitMaxs(int maxStack, int maxLocals) {
+                            super.visitMaxs(Math.max(maxStack, 2), maxLocals);
+                        }
+                    };
+                }
+                return mv;
+            }
+        };
+
+        cr.accept(cv, 0);
+        return cw.toByteArray();
+    }
+
+    private static String normalize(String s) {
+        if (s == null) {
+            return "";
+        }
+        return s.replace("\\", "/");
+    }
+
+    public static <T> List<T> newList(T... objects) {
+        if (objects != null) {
+            List<T> list = new ArrayList<>(objects.length);
+            for (T object : objects) {
+                list.add(object);
+            }
+            return list;
+        }
+        return new ArrayList<>();
+    }
+
+    public static <T> Set<T> newSet(T... objects) {
+        if (objects != null) {
+            Set<T> set = new HashSet<>(objects.length);
+            for (T object : objects) {
+                set.add(object);
+            }
+            return set;
+        }
+        return new HashSet<>();
+    }
+
+}
@@ -0,0 +1,934 @@
+package com.github.jsbxyyx.mjar;
+
+import com.github.jsbxyyx.mjar.runtime.EncryptedIndex;
+import com.github.jsbxyyx.mjar.runtime.ScanMetadata;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+public class Mjarencrypt4 {
+    private static final String SPRING_BOOT_LIB = "BOOT-INF/lib/";
+    private static final String WEB_INF_LIB = "WEB-INF/lib/";
+    private static final String MAYBE_DECRYPT_METHOD_NAME = "maybeDecrypt";
+    private static final String MAYBE_DECRYPT_METHOD_DESC = "([BI)[B";
+    // mjar-runtime 中的解密缓存，--runtime-cache 时补丁经它调用 maybeDecrypt
+    private static final String DECRYPT_CACHE_CLASS = "com/github/jsbxyyx/mjar/runtime/DecryptCache";
+    private static final String DECRYPT_CACHE_DESC = "([BILjava/lang/Class;)[B";
+    // patchClassReader 的输出发生变化时递增，使缓存中旧的补丁结果失效
+    private static final int PATCH_VERSION = 2;
+
+    // 需要加密的条目：args[0] 中逗号分隔的 include 规则与 --exclude= 规则
+    private static PackageMatcher encryptMatcher = PackageMatcher.none();
+    // 规则的规范形式，作为嵌套归档缓存键的一部分
+    private static String selection = "";
+    private static Encryptor encryptor;
+    // 并行流水线：threads <= 1 时退化为顺序处理
+    private static int threads = Runtime.getRuntime().availableProcessors();
+    private static int queueDepth = 0;
+    private static ExecutorService workers;
+    // --exec=virtual：归档与嵌套归档的任务各占一个虚拟线程，CPU 密集的加密与 ASM 仍交给 workers；
+    // 为 null 时嵌套归档在读取线程中依次处理
+    private static ExecutorService ioTasks;
+    private static int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private static TransformCache cache;
+    // 每个工作任务读取、加密并压缩的 class 数，<= 1 时每个 class 一个任务；加密器仍逐个调用
+    private static int batchSize = 32;
+    // 在每个含加密 class 的归档中写出 EncryptedIndex
+    private static boolean buildIndex = false;
+    // 在每个含加密 class 的归档中写出 ScanMetadata
+    private static boolean scanMetadata = false;
+    // 批量模式下同时处理的归档数，<= 0 时按工作线程数决定
+    private static int parallelArchives = 0;
+    // --reproducible：所有条目使用的修改时间，-1 表示沿用源归档中的时间
+    private static long fixedTime = -1;
+    // --layers：输出归档按层展开到的目录，批量模式下每个归档一个子目录
+    private static File layersDir;
+    // --runtime-cache：补丁后的 ClassReader 经 mjar-runtime 的 DecryptCache 调用 maybeDecrypt
+    private static boolean runtimeCache = false;
+    // --trace：训练运行的类加载记录，写出预热列表；reorderHot 时记录中的 class 移到归档开头
+    private static WarmupTrace trace;
+    private static boolean reorderHot = false;
+
+    public static void main(String[] args) throws Exception {
+        try {
+            run(args);
+        } finally {
+            Log.flush();
+        }
+    }
+
+    private static void run(String[] args) throws Exception {
+        resetOptions();
+        if (args == null || args.length < 2) {
+            Log.println("Usage: java -jar mjar.jar <pkg_prefix[,pkg_prefix...]> <source_jar|glob|@list> [source_jar...] [DEBUG] [--exclude=PATTERN[,PATTERN...]] [--threads=N] [--queue=N] [--archives=N] [--level=0-9] [--spool-limit=SIZE] [--direct-buffers] [--cache=DIR] [--cache-size=SIZE] [--batch=N] [--index] [--scan-metadata] [--reproducible] [--layers=DIR] [--runtime-cache] [--trace=FILE] [--reorder-hot] [--exec=platform|virtual] [--encryptor=NAME] [--plan[=json]] [--log=quiet|summary|tree|debug] [--metrics-json=FILE]");
+            return;
+        }
+
+        List<String> includes = PackageMatcher.parse(args[0]);
+        List<String> excludes = new ArrayList<>();
+        String encryptorName = "native";
+        List<String> inputs = new ArrayList<>();
+        inputs.add(args[1]);
+        File cacheDir = null;
+        long cacheSize = 1L << 30;
+        String plan = null;
+        File metricsJson = null;
+        String exec = "platform";
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            if ("DEBUG".equalsIgnoreCase(arg)) {
+                Log.setLevel(Log.Level.DEBUG);
+            } else if (arg.startsWith("--log=")) {
+                Log.Level level = Log.parse(arg.substring("--log=".length()));
+                if (level == null) {
+                    Log.println("Invalid log level: " + arg);
+                    return;
+                }
+                Log.setLevel(level);
+            } else if (arg.startsWith("--exclude=")) {
+                excludes.addAll(PackageMatcher.parse(arg.substring("--exclude=".length())));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--archives=")) {
+                parallelArchives = Integer.parseInt(arg.substring("--archives=".length()));
+            } else if (arg.startsWith("--queue=")) {
+                queueDepth = Integer.parseInt(arg.substring("--queue=".length()));
+            } else if (arg.startsWith("--spool-limit=")) {
+                Spool.setMemoryLimit(parseSize(arg.substring("--spool-limit=".length())));
+            } else if ("--direct-buffers".equals(arg)) {
+                BufferPool.setDirect(true);
+            } else if (arg.startsWith("--batch=")) {
+                batchSize = Integer.parseInt(arg.substring("--batch=".length()));
+            } else if ("--index".equals(arg)) {
+                buildIndex = true;
+            } else if ("--scan-metadata".equals(arg)) {
+                scanMetadata = true;
+            } else if ("--reproducible".equals(arg)) {
+                fixedTime = Reproducible.time();
+            } else if (arg.startsWith("--layers=")) {
+                layersDir = new File(arg.substring("--layers=".length()));
+            } else if ("--runtime-cache".equals(arg)) {
+                runtimeCache = true;
+            } else if (arg.startsWith("--trace=")) {
+                trace = WarmupTrace.load(new File(arg.substring("--trace=".length())));
+            } else if ("--reorder-hot".equals(arg)) {
+                reorderHot = true;
+            } else if (arg.startsWith("--exec=")) {
+                exec = arg.substring("--exec=".length());
+                if (!"platform".equals(exec) && !"virtual".equals(exec)) {
+                    Log.println("Invalid execution mode: " + exec);
+                    return;
+                }
+            } else if (arg.startsWith("--cache=")) {
+                cacheDir = new File(arg.substring("--cache=".length()));
+            } else if (arg.startsWith("--cache-size=")) {
+                cacheSize = parseSize(arg.substring("--cache-size=".length()));
+            } else if ("--plan".equals(arg) || "--plan=json".equals(arg)) {
+                plan = arg;
+            } else if (arg.startsWith("--metrics-json=")) {
+                metricsJson = new File(arg.substring("--metrics-json=".length()));
+            } else if (arg.startsWith("--encryptor=")) {
+                encryptorName = arg.substring("--encryptor=".length());
+            } else if (arg.startsWith("--level=")) {
+                compressionLevel = Integer.parseInt(arg.substring("--level=".length()));
+                if (compressionLevel < 0 || compressionLevel > 9) {
+                    Log.println("Invalid compression level: " + compressionLevel);
+                    return;
+                }
+            } else if (!arg.startsWith("--")) {
+                inputs.add(arg);
+            } else {
+                Log.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        if (reorderHot && trace == null) {
+            Log.println("--reorder-hot requires --trace=FILE");
+            return;
+        }
+        if (queueDepth <= 0) queueDepth = Math.max(threads, 1) * 4;
+        select(includes, excludes);
+        // 多个输入、glob 或 @列表文件时为批量模式
+        boolean batch = inputs.size() > 1 || ArchiveBatch.isBatchSpec(args[1]);
+        List<File> sources = batch ? ArchiveBatch.resolve(inputs) : Collections.singletonList(new File(args[1]));
+        if (sources.isEmpty()) {
+            Log.println("No input archives: " + inputs);
+            return;
+        }
+        if (plan != null) {
+            // 只读取中央目录做统计，不需要加载加密器
+            long start = System.nanoTime();
+            boolean json = "--plan=json".equals(plan);
+            if (json && batch) Log.print("[");
+            for (int i = 0; i < sources.size(); i++) {
+                File sourceFile = sources.get(i);
+                try (MappedZipFile zip = MappedZipFile.open(sourceFile)) {
+                    ArchivePlan result = ArchivePlan.scan(zip, sourceFile.getName(), compressionLevel);
+                    if (json && batch) {
+                        Log.print((i == 0 ? "\n" : ",\n") + result.toJson().trim());
+                    } else if (json) {
+                        Log.print(result.toJson());
+                    } else {
+                        Log.print(result.toText());
+                    }
+                }
+            }
+            if (json && batch) {
+                Log.print("\n]\n");
+            } else if (!json) {
+                Log.print(String.format("Planned in %d ms%n", (System.nanoTime() - start) / 1_000_000));
+            }
+            return;
+        }
+        encryptor = EncryptorProvider.load(encryptorName);
+        if (fixedTime != -1) encryptor = Reproducible.encryptor(encryptor);
+        if (encryptorName.startsWith("aes-")) {
+            // mjar-runtime 的 AesDecryptor 只经由 DecryptCache 调用
+            Log.summary(runtimeCache ? "Run with -Dmjar.decryptor=" + encryptorName + " and the same " + AesEncryptor.KEY_PROPERTY
+                    : "--encryptor=" + encryptorName + " without --runtime-cache needs a native maybeDecrypt that decrypts this format");
+        }
+        if (cacheDir != null) {
+            cache = new TransformCache(cacheDir, cacheSize, "v" + PATCH_VERSION + "|" + encryptor.identity());
+        }
+
+        long started = System.nanoTime();
+        List<ArchiveBatch.Result> results = null;
+        if (threads > 1) workers = newWorkerPool(threads);
+        if ("virtual".equals(exec)) {
+            if (useVirtualThreads(true)) {
+                Log.summary("Execution: virtual threads for archives and nested jars, worker threads: " + Math.max(threads, 1));
+            } else {
+                Log.summary("Virtual threads need Java 21+, running on platform threads (Java "
+                        + System.getProperty("java.version") + ")");
+            }
+        }
+        try {
+            if (batch) {
+                // 各归档共用工作线程池，读取、嵌套归档与写出在各自的线程中进行；
+                // 虚拟线程等待 I/O 时不占用平台线程，默认同时处理所有归档
+                int parallel = parallelArchives > 0 ? parallelArchives
+                        : ioTasks != null ? sources.size() : Math.min(sources.size(), Math.max(1, threads / 2));
+                Log.summary("Batch: " + sources.size() + " archives, " + parallel + " at a time"
+                        + (ioTasks != null ? " on virtual threads" : "") + ", worker threads: " + Math.max(threads, 1));
+                results = ArchiveBatch.run(sources, parallel, (source, output) ->
+                        encryptArchive(source, output, layersDir == null ? null : new File(layersDir, baseName(source))), ioTasks);
+            } else {
+                encryptArchive(sources.get(0), ArchiveBatch.outputFor(sources.get(0)), layersDir);
+            }
+        } finally {
+            if (workers != null) workers.shutdownNow();
+            useVirtualThreads(false);
+            ZipCodecs.clear();
+        }
+        long wall = System.nanoTime() - started;
+        long bytesIn = 0;
+        long bytesOut = 0;
+        if (results == null) {
+            bytesIn = sources.get(0).length();
+            bytesOut = ArchiveBatch.outputFor(sources.get(0)).length();
+        } else {
+            for (ArchiveBatch.Result r : results) {
+                bytesIn += r.bytesIn;
+                bytesOut += r.bytesOut;
+            }
+        }
+        Log.summary("\nSkipped nested archives: " + Metrics.skippedArchives()
+                + " (" + Metrics.skippedArchiveBytes() + " bytes passed through)");
+        if (scanMetadata) {
+            // 组件扫描每读取一个加密类的类头原本都要解密一次，运行时由 ScanMetadataReaderFactory 回答其中类上没有注解的
+            Log.summary("Scan metadata: " + Metrics.scanMetadataClasses()
+                    + " encrypted classes described, those without class annotations are scanned without decryption");
+        }
+        if (trace != null) {
+            Log.summary("Warm-up list: " + Metrics.warmupClasses() + " encrypted classes of " + trace.size()
+                    + " traced" + (reorderHot ? ", moved to the front of their archives" : ""));
+        }
+        if (cache != null) {
+            cache.evict();
+            Log.summary(cache.report());
+        }
+        if (results != null) {
+            Log.summary(ArchiveBatch.report(results));
+        }
+        Log.summary(Metrics.report(wall, bytesIn, bytesOut));
+        if (metricsJson != null) {
+            String archives = results == null ? null : ArchiveBatch.toJson(results);
+            Files.write(metricsJson.toPath(), Metrics.toJson(wall, bytesIn, bytesOut, cache, archives)
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        if (results == null) {
+            Log.summary(">>> Encryption Complete: " + ArchiveBatch.outputFor(sources.get(0)).getAbsolutePath());
+            return;
+        }
+        int failed = ArchiveBatch.failures(results);
+        if (failed > 0) {
+            throw new IOException(failed + " of " + results.size() + " archives failed");
+        }
+        Log.summary(">>> Encryption Complete: " + results.size() + " archives");
+    }
+
+    /**
+     * @param layers 不为 null 时，写出后再把输出归档按层展开到该目录
+     */
+    private static void encryptArchive(File sourceFile, File outputFile, File layers) throws Exception {
+        if (outputFile.exists()) {
+            Log.summary("Output file already exists, deleting: " + outputFile.getAbsolutePath());
+            outputFile.delete();
+        }
+
+        Log.summary("Processing: " + sourceFile.getName());
+        Log.tree("/");
+
+        // 重建过的嵌套归档（含加密或打补丁的 class）不能与原样复制的依赖同层
+        Set<String> rewritten = layers != null ? new LinkedHashSet<>() : null;
+        try (MappedZipFile zip = MappedZipFile.open(sourceFile);
+             OutputStream fos = Metrics.timed(new FileOutputStream(outputFile))) {
+            processLevel(zip, fos, 0, rewritten);
+        }
+        if (layers != null) {
+            try (MappedZipFile zip = MappedZipFile.open(outputFile)) {
+                Layers split = Layers.of(zip, rewritten);
+                split.extract(zip, layers);
+                Log.summary("Layers of " + outputFile.getName() + " -> " + layers.getAbsolutePath() + "\n" + split.report());
+            }
+        }
+    }
+
+    private static String baseName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * 供同包的基准测试直接驱动 processLevel，不加载原生库：设置目标包与加密器，threadCount > 1 时启用工作线程池。
+     */
+    static void setup(String pkgPrefix, Encryptor enc, int threadCount) {
+        shutdown();
+        resetOptions();
+        select(PackageMatcher.parse(pkgPrefix), new ArrayList<>());
+        encryptor = enc;
+        threads = threadCount;
+        queueDepth = Math.max(threads, 1) * 4;
+        workers = threads > 1 ? newWorkerPool(threads) : null;
+    }
+
+    /**
+     * 选项保存在静态字段中：同一个 JVM 中多次调用 main 或 setup 时先恢复默认值，不沿用上一次的选项。
+     */
+    private static void resetOptions() {
+        encryptMatcher = PackageMatcher.none();
+        selection = "";
+        encryptor = null;
+        threads = Runtime.getRuntime().availableProcessors();
+        queueDepth = 0;
+        compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        cache = null;
+        batchSize = 32;
+        buildIndex = false;
+        scanMetadata = false;
+        parallelArchives = 0;
+        fixedTime = -1;
+        layersDir = null;
+        runtimeCache = false;
+        trace = null;
+        reorderHot = false;
+        Log.setLevel(Log.Level.TREE);
+        Spool.setMemoryLimit(Spool.DEFAULT_MEMORY_LIMIT);
+        BufferPool.setDirect(false);
+    }
+
+    private static void select(List<String> includes, List<String> excludes) {
+        encryptMatcher = PackageMatcher.compile(includes, excludes);
+        selection = includes + "!" + excludes;
+    }
+
+    static void shutdown() {
+        if (workers != null) {
+            workers.shutdownNow();
+            workers = null;
+        }
+        useVirtualThreads(false);
+        ZipCodecs.clear();
+    }
+
+    /**
+     * 开启或关闭虚拟线程执行模式，返回是否已开启；当前 JDK 不支持虚拟线程时保持平台线程并返回 false。
+     */
+    static boolean useVirtualThreads(boolean enable) {
+        if (ioTasks != null) {
+            ioTasks.shutdownNow();
+            ioTasks = null;
+        }
+        if (enable) ioTasks = VirtualThreads.newExecutor("mjar-io-");
+        return ioTasks != null;
+    }
+
+    static void processLevel(MappedZipFile zip, OutputStream os, int depth) throws Exception {
+        processLevel(zip, os, depth, null);
+    }
+
+    /**
+     * @param rewritten 不为 null 时，加入本层中重建（而非原样复制）的嵌套归档的条目名
+     */
+    static void processLevel(MappedZipFile zip, OutputStream os, int depth, Set<String> rewritten) throws Exception {
+        Manifest manifest = zip.getManifest();
+        ZipWriter zw = new ZipWriter(os);
+        if (fixedTime != -1) zw.setTime(fixedTime);
+        if (manifest != null) zw.writeManifest(manifest, manifestTime(zip), compressionLevel);
+        List<MappedZipFile.Entry> entries = zip.entries();
+        if (trace != null) {
+            // 预热列表紧跟 manifest，启动时最先读取
+            byte[] warmup = trace.warmupList(entries, Mjarencrypt4::needEncrypt);
+            if (warmup != null) {
+                zw.write(ZipRecord.of(WarmupTrace.NAME, -1, warmup, compressionLevel));
+                Metrics.warmup(countLines(warmup));
+            }
+            if (reorderHot) entries = trace.reorder(entries);
+        }
+
+        // 读取与写出都在当前线程按原始顺序进行，转换与压缩交给工作线程；
+        // 队列中最多保留 queueDepth 个未写出的条目，内存占用与归档大小无关。
+        // 目录树在写出条目时输出，嵌套归档在其他线程中重建时也保持条目顺序
+        Deque<Pending> pending = new ArrayDeque<>();
+        // 待加密的 class 攒够一批后作为一个任务提交，一次调用完成整批加密
+        List<PendingClass> batch = new ArrayList<>();
+        EncryptedIndex.Builder index = buildIndex ? new EncryptedIndex.Builder() : null;
+        ScanMetadataCollector meta = scanMetadata ? new ScanMetadataCollector() : null;
+        for (int i = 0; i < entries.size(); i++) {
+            MappedZipFile.Entry entry = entries.get(i);
+            String name = entry.getName();
+            Metrics.entry();
+            if (JarFile.MANIFEST_NAME.equalsIgnoreCase(name)) continue;
+            // 与 JarInputStream 保持一致：位于开头的 META-INF/ 目录条目随 manifest 一起省略
+            if (i == 0 && "META-INF/".equalsIgnoreCase(name)) continue;
+            // 重新加密已加密过的归档时，旧索引由新生成的替换
+            if (index != null && EncryptedIndex.NAME.equals(name)) continue;
+            if (meta != null && ScanMetadata.NAME.equals(name)) continue;
+            if (trace != null && WarmupTrace.NAME.equals(name)) continue;
+
+            boolean isArchive = name.endsWith(".jar") || name.endsWith(".war");
+            long time = entry.getTime();
+
+            // 预扫描嵌套 jar 的中央目录，没有任何需要改动的内容时整体原样复制
+            boolean skipArchive = isArchive && !needRewrite(zip, entry);
+            // 内容未变的嵌套 jar 直接使用上次的结果
+            String archiveKey = null;
+            InputStream cachedArchive = null;
+            if (isArchive && !skipArchive && cache != null) {
+                archiveKey = cache.key("A|" + selection + "|" + compressionLevel + (buildIndex ? "|idx" : "") + (scanMetadata ? "|meta" : "")
+                        + (fixedTime != -1 ? "|t" + fixedTime : "") + (runtimeCache ? "|rc" : "")
+                        + (trace != null ? "|w" + trace.digest() + (reorderHot ? "r" : "") : ""), zip.rawData(entry));
+                cachedArchive = cache.open(archiveKey);
+            }
+
+            boolean isClass = name.endsWith(".class");
+            boolean encrypt = isClass && needEncrypt(name);
+            boolean patch = isClass && needPatch(name);
+            String tree = treeLine(name, depth, isArchive, encrypt, patch, skipArchive ? " [S]" : cachedArchive != null ? " [cached]" : "");
+            if (encrypt && index != null) index.expect(name);
+
+            Future<ZipRecord> record;
+            CompletableFuture<String> subtree = null;
+            if (skipArchive) {
+                Metrics.skippedArchive(entry.getCompressedSize());
+                record = CompletableFuture.completedFuture(ZipRecord.raw(entry, zip.rawData(entry)));
+            } else if (isArchive) {
+                if (rewritten != null) rewritten.add(name);
+                InputStream cached = cachedArchive;
+                String key = archiveKey;
+                CompletableFuture<String> nestedTree = new CompletableFuture<>();
+                Callable<ZipRecord> task = () -> {
+                    // 嵌套归档的目录树先收集起来，写出该条目时紧跟在它的 [A] 行之后输出
+                    StringBuilder previous = Log.beginCapture();
+                    try {
+                        return rebuildNested(zip, entry, cached, key, depth + 1);
+                    } finally {
+                        nestedTree.complete(Log.endCapture(previous));
+                    }
+                };
+                // 虚拟线程模式下嵌套归档在自己的线程中重建，读取线程继续处理后面的条目
+                record = ioTasks != null ? ioTasks.submit(task) : CompletableFuture.completedFuture(task.call());
+                subtree = nestedTree;
+            } else if (encrypt && batchSize > 1) {
+                CompletableFuture<ZipRecord> slot = new CompletableFuture<>();
+                batch.add(new PendingClass(entry, time, slot));
+                if (batch.size() >= batchSize) batch = submitBatch(zip, batch, meta);
+                record = slot;
+            } else if (encrypt || patch) {
+                record = submit(() -> {
+                    byte[] bytes = read(zip, entry);
+                    if (encrypt && meta != null) extractMetadata(meta, name, bytes);
+                    return ZipRecord.of(name, time, cachedTransform(name, encrypt, bytes), compressionLevel);
+                });
+            } else {
+                // 不需要改动的条目直接复制原始压缩数据，不解压也不重新压缩
+                record = CompletableFuture.completedFuture(ZipRecord.raw(entry, zip.rawData(entry)));
+            }
+
+            pending.addLast(new Pending(record, tree, subtree));
+            while (pending.size() >= queueDepth) {
+                // 写出前先提交未满的批次，否则可能等待一个还没有提交的任务
+                if (!batch.isEmpty()) batch = submitBatch(zip, batch, meta);
+                write(zw, pending.pollFirst(), index);
+            }
+        }
+        if (!batch.isEmpty()) submitBatch(zip, batch, meta);
+        while (!pending.isEmpty()) {
+            write(zw, pending.pollFirst(), index);
+        }
+        if (index != null && !index.isEmpty()) {
+            zw.write(ZipRecord.of(EncryptedIndex.NAME, -1, index.toByteArray(), compressionLevel));
+        }
+        if (meta != null && !meta.isEmpty()) {
+            zw.write(ZipRecord.of(ScanMetadata.NAME, -1, meta.toByteArray(), compressionLevel));
+            Metrics.scanMetadata(meta.size());
+        }
+        if (meta != null) {
+            // 解析在工作线程中进行，由处理归档的线程统一输出，与目录树一起收集
+            for (String name : meta.unparsed()) {
+                Log.debug("Cannot parse class header, no scan metadata: " + name);
+            }
+        }
+        zw.finish();
+    }
+
+    private static int countLines(byte[] text) {
+        int n = 0;
+        for (byte b : text) {
+            if (b == '\n') n++;
+        }
+        return n;
+    }
+
+    /**
+     * 沿用源归档中 manifest 的时间：重建的嵌套归档内容不变时输出也逐字节不变，分层输出中依赖层保持稳定。
+     */
+    private static long manifestTime(MappedZipFile zip) {
+        for (MappedZipFile.Entry entry : zip.entries()) {
+            if (JarFile.MANIFEST_NAME.equalsIgnoreCase(entry.getName())) return entry.getTime();
+        }
+        return -1;
+    }
+
+    private static void write(ZipWriter zw, Pending next, EncryptedIndex.Builder index) throws Exception {
+        ZipRecord record = await(next.record);
+        if (next.tree != null) Log.emit(next.tree);
+        // 记录完成时重建任务已经结束，子树已收集完毕
+        if (next.subtree != null) Log.emit(next.subtree.join());
+        if (index != null) index.written(record.name, record.size, record.crc);
+        zw.write(record);
+    }
+
+    /**
+     * 只读取嵌套归档的中央目录判断其中是否有需要加密或打补丁的 class；
+     * 压缩存储的嵌套归档无法免解压扫描，保守地视为需要处理。
+     */
+    private static boolean needRewrite(MappedZipFile zip, MappedZipFile.Entry entry) throws Exception {
+        if (entry.getMethod() != ZipEntry.STORED) {
+            return true;
+        }
+        MappedZipFile nested = MappedZipFile.wrap(zip.rawData(entry));
+        for (MappedZipFile.Entry e : nested.entries()) {
+            String name = e.getName();
+            if (name.endsWith(".class")) {
+                if (needEncrypt(name) || needPatch(name)) return true;
+            } else if (name.endsWith(".jar") || name.endsWith(".war")) {
+                if (needRewrite(nested, e)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 重建嵌套归档：有缓存时直接复制，否则递归处理，同时记录到缓存。
+     */
+    private static ZipRecord rebuildNested(MappedZipFile zip, MappedZipFile.Entry entry, InputStream cachedArchive,
+                                           String archiveKey, int depth) throws Exception {
+        String name = entry.getName();
+        // lib 下的嵌套 jar 必须 STORED，Spring Boot 才能直接读取
+        boolean stored = name.startsWith(SPRING_BOOT_LIB) || name.startsWith(WEB_INF_LIB);
+        Spool out = stored ? Spool.stored() : Spool.deflated(compressionLevel);
+        try {
+            if (cachedArchive != null) {
+                try (InputStream is = cachedArchive) {
+                    out.writeAll(is);
+                }
+            } else if (archiveKey != null) {
+                TransformCache.Recorder recorder = cache.record(archiveKey, out);
+                try {
+                    processNested(zip, entry, recorder, depth);
+                } catch (Exception e) {
+                    recorder.discard();
+                    throw e;
+                }
+                recorder.close();
+            } else {
+                processNested(zip, entry, out, depth);
+            }
+            out.close();
+        } catch (Exception e) {
+            out.release();
+            throw e;
+        }
+        return ZipRecord.spooled(name, entry.getTime(), out);
+    }
+
+    private static void processNested(MappedZipFile zip, MappedZipFile.Entry entry, OutputStream out, int depth) throws Exception {
+        // STORED 的嵌套 jar 直接映射父归档中的数据，压缩过的先解压到 Spool
+        if (entry.getMethod() == ZipEntry.STORED) {
+            processLevel(MappedZipFile.wrap(zip.rawData(entry)), out, depth);
+            return;
+        }
+        Spool in = Spool.stored();
+        try {
+            try (InputStream is = zip.open(entry)) {
+                long t = Metrics.start();
+                in.writeAll(is);
+                Metrics.stop(Metrics.Phase.READ, t, in.getSize());
+            }
+            in.close();
+            processLevel(MappedZipFile.wrap(in.toByteBuffer()), out, depth);
+        } finally {
+            in.release();
+        }
+    }
+
+    private static List<PendingClass> submitBatch(MappedZipFile zip, List<PendingClass> items, ScanMetadataCollector meta) {
+        Runnable task = () -> {
+            try {
+                byte[][] inputs = new byte[items.size()][];
+                for (int i = 0; i < inputs.length; i++) {
+                    inputs[i] = read(zip, items.get(i).entry);
+                    if (meta != null) extractMetadata(meta, items.get(i).entry.getName(), inputs[i]);
+                }
+                byte[][] outputs = encryptClasses(inputs);
+                for (int i = 0; i < outputs.length; i++) {
+                    PendingClass item = items.get(i);
+                    item.slot.complete(ZipRecord.of(item.entry.getName(), item.time, outputs[i], compressionLevel));
+                }
+            } catch (Throwable t) {
+                for (PendingClass item : items) {
+                    item.slot.completeExceptionally(t);
+                }
+            }
+        };
+        if (workers == null) {
+            task.run();
+        } else {
+            workers.execute(task);
+        }
+        return new ArrayList<>();
+    }
+
+    private static <T> Future<T> submit(Callable<T> task) throws Exception {
+        if (workers == null) {
+            return CompletableFuture.completedFuture(task.call());
+        }
+        return workers.submit(task);
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    private static ExecutorService newWorkerPool(int size) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(size, r -> {
+            Thread t = new Thread(r, "mjar-worker-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static long parseSize(String value) {
+        String v = value.trim().toUpperCase();
+        long unit = 1;
+        if (v.endsWith("K")) {
+            unit = 1L << 10;
+        } else if (v.endsWith("M")) {
+            unit = 1L << 20;
+        } else if (v.endsWith("G")) {
+            unit = 1L << 30;
+        }
+        if (unit != 1) v = v.substring(0, v.length() - 1);
+        return Long.parseLong(v) * unit;
+    }
+
+    /**
+     * 条目在目录树中的一行，当前级别不输出时返回 null。
+     */
+    private static String treeLine(String name, int depth, boolean isArchive, boolean encrypt, boolean patch, String mark) {
+        if (isArchive) {
+            return Log.treeLine(Log.Level.TREE, depth, "[A] " + name + mark);
+        } else if (name.endsWith(".class")) {
+            if (encrypt || patch) {
+                return Log.treeLine(Log.Level.TREE, depth, "[C] " + name + (encrypt ? " [E]" : "") + (patch ? " [P]" : ""));
+            }
+        } else if (Log.isEnabled(Log.Level.DEBUG)) {
+            return Log.treeLine(Log.Level.DEBUG, depth, "[R]  " + name);
+        }
+        return null;
+    }
+
+    private static byte[] cachedTransform(String className, boolean encrypt, byte[] bytes) throws IOException {
+        if (cache == null) {
+            return transformClass(className, encrypt, bytes);
+        }
+        // 补丁会写入类名，因此打补丁的结果还要以类名区分
+        long t = Metrics.start();
+        String key = cache.key(encrypt ? "E" : "P|" + (runtimeCache ? "rc|" : "") + className, bytes);
+        byte[] cached = cache.get(key);
+        Metrics.stop(Metrics.Phase.CACHE, t, cached != null ? cached.length : 0);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] result = transformClass(className, encrypt, bytes);
+        t = Metrics.start();
+        cache.put(key, result);
+        Metrics.stop(Metrics.Phase.CACHE, t, result.length);
+        return result;
+    }
+
+    private static byte[][] encryptClasses(byte[][] inputs) throws IOException {
+        if (cache == null) {
+            return encrypt(inputs);
+        }
+        byte[][] outputs = new byte[inputs.length][];
+        String[] keys = new String[inputs.length];
+        List<Integer> missing = new ArrayList<>();
+        long t = Metrics.start();
+        long hitBytes = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            keys[i] = cache.key("E", inputs[i]);
+            outputs[i] = cache.get(keys[i]);
+            if (outputs[i] == null) {
+                missing.add(i);
+            } else {
+                hitBytes += outputs[i].length;
+            }
+        }
+        Metrics.stop(Metrics.Phase.CACHE, t, hitBytes);
+        if (missing.isEmpty()) {
+            return outputs;
+        }
+        byte[][] todo = new byte[missing.size()][];
+        for (int i = 0; i < todo.length; i++) {
+            todo[i] = inputs[missing.get(i)];
+        }
+        byte[][] encrypted = encrypt(todo);
+        t = Metrics.start();
+        long putBytes = 0;
+        for (int i = 0; i < encrypted.length; i++) {
+            int idx = missing.get(i);
+            outputs[idx] = encrypted[i];
+            cache.put(keys[idx], encrypted[i]);
+            putBytes += encrypted[i].length;
+        }
+        Metrics.stop(Metrics.Phase.CACHE, t, putBytes);
+        return outputs;
+    }
+
+    private static void extractMetadata(ScanMetadataCollector meta, String name, byte[] bytes) {
+        long t = Metrics.start();
+        if (!meta.add(bytes)) {
+            meta.unparsed(name);
+        }
+        Metrics.stop(Metrics.Phase.SCAN, t, bytes.length);
+    }
+
+    private static byte[] read(MappedZipFile zip, MappedZipFile.Entry entry) throws IOException {
+        long t = Metrics.start();
+        byte[] bytes = zip.read(entry);
+        Metrics.stop(Metrics.Phase.READ, t, bytes.length);
+        return bytes;
+    }
+
+    private static byte[][] encrypt(byte[][] inputs) {
+        long t = Metrics.start();
+        byte[][] outputs = new byte[inputs.length][];
+        long n = 0;
+        for (int i = 0; i < inputs.length; i++) {
+            outputs[i] = encryptor.encrypt(inputs[i]);
+            n += inputs[i].length;
+        }
+        Metrics.stop(Metrics.Phase.ENCRYPT, t, n);
+        return outputs;
+    }
+
+    private static byte[] transformClass(String className, boolean encrypt, byte[] bytes) {
+        if (encrypt) {
+            long t = Metrics.start();
+            byte[] encrypted = encryptor.encrypt(bytes);
+            Metrics.stop(Metrics.Phase.ENCRYPT, t, bytes.length);
+            return encrypted;
+        }
+
+        if (needPatch(className)) {
+            String internalName = className.replace(".class", "");
+            long t = Metrics.start();
+            byte[] patched = patchClassReader(internalName, bytes, runtimeCache);
+            Metrics.stop(Metrics.Phase.PATCH, t, bytes.length);
+            return patched;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * 在 ClassReader 的 ([BI...) 构造函数开头插入 maybeDecrypt 调用。
+     * ClassWriter 不计算帧（flags 为 0）：未改动的方法由 ASM 按原字节直接复制；
+     * 插入的指令位于方法开头、没有分支，也不改变局部变量的类型，原有的栈映射帧仍然有效，
+     * 只需把 max_stack 提高到至少 2。因此不再调用 getCommonSuperClass，也就不会加载工具自身 classpath 上的类。
+     */
+    static byte[] patchClassReader(String internalName, byte[] original) {
+        return patchClassReader(internalName, original, false);
+    }
+
+    /**
+     * viaRuntimeCache 为 true 时插入的是 {@code DecryptCache.maybeDecrypt(b, off, ClassReader.class)}，
+     * 由 mjar-runtime 缓存解密结果，未命中时再调用本类的 native maybeDecrypt；
+     * 同样没有分支，max_stack 至少为 3。运行时 mjar-runtime 须对 ClassReader 所在的类加载器可见。
+     * ldc 类常量要求 class 版本不低于 49（Java 5），更早的版本仍直接调用 native maybeDecrypt。
+     */
+    static byte[] patchClassReader(String internalName, byte[] original, boolean viaRuntimeCache) {
+        ClassReader cr = new ClassReader(original);
+        ClassWriter cw = new ClassWriter(cr, 0);
+        // 主版本号位于 class 文件偏移 6 处
+        boolean useCache = viaRuntimeCache && cr.readUnsignedShort(6) >= Opcodes.V1_5;
+
+        ClassVisitor cv = new ClassVisitor(Opcodes.ASM9, cw) {
+            @Override
+            public void visitEnd() {
+                MethodVisitor mv = cv.visitMethod(
+                        Opcodes.ACC_PUBLIC + Opcodes.ACC_STATIC + Opcodes.ACC_NATIVE,
+                        MAYBE_DECRYPT_METHOD_NAME,
+                        MAYBE_DECRYPT_METHOD_DESC,
+                        null,
+                        null);
+                if (mv != null) mv.visitEnd();
+                super.visitEnd();
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String sig, String[] ex) {
+                MethodVisitor mv = super.visitMethod(access, name, desc, sig, ex);
+                // 适配核心构造函数
+                if ("<init>".equals(name) && desc.startsWith("([BI")) {
+                    return new MethodVisitor(api, mv) {
+                        @Override
+                        public void visitCode() {
+                            super.visitCode();
+                            mv.visitVarInsn(Opcodes.ALOAD, 1);
+                            mv.visitVarInsn(Opcodes.ILOAD, 2);
+                            if (useCache) {
+                                mv.visitLdcInsn(Type.getObjectType(internalName));
+                                mv.visitMethodInsn(Opcodes.INVOKESTATIC,
+                                        DECRYPT_CACHE_CLASS,
+                                        MAYBE_DECRYPT_METHOD_NAME,
+                                        DECRYPT_CACHE_DESC,
+                                        false);
+                            } else {
+                                mv.visitMethodInsn(Opcodes.INVOKESTATIC,
+                                        internalName,
+                                        MAYBE_DECRYPT_METHOD_NAME,
+                                        MAYBE_DECRYPT_METHOD_DESC,
+                                        false);
+                            }
+                            mv.visitVarInsn(Opcodes.ASTORE, 1);
+                        }
+
+                        @Override
+                        public void visitInsn(int opcode) {
+                            if (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN) {
+                                mv.visitInsn(Opcodes.ACONST_NULL);
+                                mv.visitVarInsn(Opcodes.ASTORE, 1);
+                            }
+                            super.visitInsn(opcode);
+                        }
+
+                        @Override
+                        public void visitMaxs(int maxStack, int maxLocals) {
+                            // 插入的 aload_1 / iload_2（以及 ldc 类常量）需要 2（3）个操作数栈槽位
+                            super.visitMaxs(Math.max(maxStack, useCache ? 3 : 2), maxLocals);
+                        }
+                    };
+                }
+                return mv;
+            }
+        };
+        cr.accept(cv, 0);
+        return cw.toByteArray();
+    }
+
+    static boolean needEncrypt(String className) {
+        return encryptMatcher.matches(className);
+    }
+
+    static boolean needPatch(String className) {
+        return className.endsWith("/asm/ClassReader.class");
+    }
+
+    /**
+     * 等待写出的条目：记录、该条目在目录树中的一行，以及嵌套归档收集的子树（其他条目为 null）。
+     */
+    private static final class Pending {
+        final Future<ZipRecord> record;
+        final String tree;
+        final CompletableFuture<String> subtree;
+
+        Pending(Future<ZipRecord> record, String tree, CompletableFuture<String> subtree) {
+            this.record = record;
+            this.tree = tree;
+            this.subtree = subtree;
+        }
+    }
+
+    private static final class PendingClass {
+        final MappedZipFile.Entry entry;
+        final long time;
+        final CompletableFuture<ZipRecord> slot;
+
+        PendingClass(MappedZipFile.Entry entry, long time, CompletableFuture<ZipRecord> slot) {
+            this.entry = entry;
+            this.time = time;
+            this.slot = slot;
+        }
+    }
+}
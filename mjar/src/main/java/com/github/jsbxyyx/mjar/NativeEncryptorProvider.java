@@ -0,0 +1,17 @@
+package com.github.jsbxyyx.mjar;
+
+/**
+ * 基于 libmjar 的默认加密器。
+ */
+public class NativeEncryptorProvider implements EncryptorProvider {
+
+    @Override
+    public String name() {
+        return "native";
+    }
+
+    @Override
+    public Encryptor create() {
+        return new Mjarencrypt();
+    }
+}
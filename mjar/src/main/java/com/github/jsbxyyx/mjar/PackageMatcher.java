@@ -0,0 +1,445 @@
+package com.github.jsbxyyx.mjar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预先编译的条目选择器，由 include / exclude 两组规则组成：
+ * <ul>
+ *     <li>不含通配符的规则按子串匹配（与原先的 {@code name.contains(pkg)} 一致），
+ *     全部编译进一个 Aho-Corasick 自动机，一次扫描条目名即可得到所有命中的规则；</li>
+ *     <li>含 {@code *}、{@code **}、{@code ?} 的规则为 glob，须从条目名开头或某个 '/' 之后开始、匹配到条目名末尾。
+ *     {@code *} 与 {@code ?} 不跨越 '/'，{@code **} 可以跨越。所有 glob 编译进同一个位并行的 NFA：
+ *     每个 glob 的每个位置占一位，扫描条目名时按字符的转移掩码整体移位，一次扫描得到所有命中的 glob，
+ *     开销与条目名长度 × 位数 / 64 成正比，不随 {@code **} 的个数回溯。</li>
+ * </ul>
+ * 多条规则同时命中时，字面字符最多（最具体）的规则生效，长度相同时 exclude 优先；没有 include 命中则不选中。
+ * 匹配过程只使用每个线程复用的状态数组，可在多个线程中共享。
+ */
+public final class PackageMatcher {
+    // glob 的记号：除下面三个外均为字面字符；glob 中不会出现这些私有区字符
+    private static final char ANY = '\uE000';
+    private static final char STAR = '\uE001';
+    private static final char ANY_PATH = '\uE002';
+    private static final PackageMatcher NONE = compile(Collections.<String>emptyList(), Collections.<String>emptyList());
+
+    // 自动机：状态 s 读入字符列 c 后转到 table[s * columns + c]，不在任何规则中的字符回到初始状态
+    private final int[] asciiColumn = new int[128];
+    private final char[] otherChars;
+    private final int[] otherColumns;
+    private final int columns;
+    private final int[] table;
+    // 每个状态（含失败链）命中的最长规则长度，0 表示没有命中；以及该长度下是否为 exclude
+    private final int[] outLength;
+    private final boolean[] outExclude;
+
+    // glob 的 NFA：第 i 位表示已匹配某个 glob 的前若干个记号，每个 glob 末尾多一位表示整个 glob 已匹配
+    private final int words;
+    private final int[] globAsciiColumn = new int[128];
+    private final char[] globOtherChars;
+    private final int[] globOtherColumns;
+    // 每列 words 个 long：读入该列的字符后前进一位的状态（字面字符相同，或 ? 且字符不是 '/'）
+    private final long[] advance;
+    // 读入 '/' 或其他字符时停留原位的状态（** 总是停留，* 只在字符不是 '/' 时停留）
+    private final long[] loopSlash;
+    private final long[] loopOther;
+    // * 与 ** 的状态，可以不读字符直接前进；连续通配符最多的个数决定传播的轮数
+    private final long[] star;
+    private final int starRun;
+    // 每个 glob 的起始状态，在条目名开头与每个 '/' 之后加入
+    private final long[] start;
+    private final long[] accept;
+    // 接受位对应的规则长度与是否为 exclude
+    private final int[] acceptLength;
+    private final boolean[] acceptExclude;
+    // 每个线程扫描时复用的当前/下一状态
+    private final ThreadLocal<long[]> globStates;
+
+    private PackageMatcher(List<String> literals, List<Boolean> literalExclude,
+                           List<String> globPatterns, List<Boolean> globPatternExclude) {
+        // 字母表：规则中出现过的字符
+        Arrays.fill(asciiColumn, -1);
+        Map<Character, Integer> columnOf = new HashMap<>();
+        for (String literal : literals) {
+            for (int i = 0; i < literal.length(); i++) {
+                char ch = literal.charAt(i);
+                if (!columnOf.containsKey(ch)) {
+                    columnOf.put(ch, columnOf.size());
+                }
+            }
+        }
+        columns = Math.max(columnOf.size(), 1);
+        List<Character> others = new ArrayList<>();
+        for (Map.Entry<Character, Integer> e : columnOf.entrySet()) {
+            if (e.getKey() < 128) {
+                asciiColumn[e.getKey()] = e.getValue();
+            } else {
+                others.add(e.getKey());
+            }
+        }
+        Collections.sort(others);
+        otherChars = new char[others.size()];
+        otherColumns = new int[others.size()];
+        for (int i = 0; i < others.size(); i++) {
+            otherChars[i] = others.get(i);
+            otherColumns[i] = columnOf.get(others.get(i));
+        }
+
+        // 先建 trie
+        List<int[]> children = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        List<Boolean> excludes = new ArrayList<>();
+        children.add(newRow());
+        lengths.add(0);
+        excludes.add(false);
+        for (int p = 0; p < literals.size(); p++) {
+            String literal = literals.get(p);
+            int state = 0;
+            for (int i = 0; i < literal.length(); i++) {
+                int c = column(literal.charAt(i));
+                int next = children.get(state)[c];
+                if (next < 0) {
+                    next = children.size();
+                    children.get(state)[c] = next;
+                    children.add(newRow());
+                    lengths.add(0);
+                    excludes.add(false);
+                }
+                state = next;
+            }
+            int len = literal.length();
+            boolean exclude = literalExclude.get(p);
+            if (len > lengths.get(state) || (len == lengths.get(state) && exclude)) {
+                lengths.set(state, len);
+                excludes.set(state, exclude);
+            }
+        }
+
+        // 按层次补全失败转移，得到确定自动机
+        int states = children.size();
+        table = new int[states * columns];
+        outLength = new int[states];
+        outExclude = new boolean[states];
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < columns; c++) {
+            int next = children.get(0)[c];
+            if (next < 0) {
+                table[c] = 0;
+            } else {
+                table[c] = next;
+                fail[next] = 0;
+                queue[tail++] = next;
+            }
+        }
+        outLength[0] = lengths.get(0);
+        while (head < tail) {
+            int state = queue[head++];
+            int f = fail[state];
+            // 合并失败链上的输出
+            int len = lengths.get(state);
+            boolean exclude = excludes.get(state);
+            if (outLength[f] > len || (outLength[f] == len && outExclude[f])) {
+                len = outLength[f];
+                exclude = outExclude[f];
+            }
+            outLength[state] = len;
+            outExclude[state] = exclude;
+            for (int c = 0; c < columns; c++) {
+                int next = children.get(state)[c];
+                if (next < 0) {
+                    table[state * columns + c] = table[f * columns + c];
+                } else {
+                    table[state * columns + c] = next;
+                    fail[next] = table[f * columns + c];
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        // glob：记号为字面字符、?、*、**，每个记号一位，末尾一位为接受状态
+        List<char[]> tokens = new ArrayList<>();
+        int bits = 0;
+        for (String pattern : globPatterns) {
+            char[] t = tokenize(pattern);
+            tokens.add(t);
+            bits += t.length + 1;
+        }
+        words = (bits + 63) >>> 6;
+        Map<Character, Integer> globColumnOf = new HashMap<>();
+        for (char[] t : tokens) {
+            for (char ch : t) {
+                if (ch != ANY && ch != STAR && ch != ANY_PATH && !globColumnOf.containsKey(ch)) {
+                    // 第 0 列留给没有出现在 glob 中的字符
+                    globColumnOf.put(ch, globColumnOf.size() + 1);
+                }
+            }
+        }
+        if (!globColumnOf.containsKey('/')) {
+            globColumnOf.put('/', globColumnOf.size() + 1);
+        }
+        List<Character> globOthers = new ArrayList<>();
+        for (Map.Entry<Character, Integer> e : globColumnOf.entrySet()) {
+            if (e.getKey() < 128) {
+                globAsciiColumn[e.getKey()] = e.getValue();
+            } else {
+                globOthers.add(e.getKey());
+            }
+        }
+        Collections.sort(globOthers);
+        globOtherChars = new char[globOthers.size()];
+        globOtherColumns = new int[globOthers.size()];
+        for (int i = 0; i < globOthers.size(); i++) {
+            globOtherChars[i] = globOthers.get(i);
+            globOtherColumns[i] = globColumnOf.get(globOthers.get(i));
+        }
+        int slashColumn = globColumnOf.get('/');
+        advance = new long[(globColumnOf.size() + 1) * words];
+        loopSlash = new long[words];
+        loopOther = new long[words];
+        star = new long[words];
+        start = new long[words];
+        accept = new long[words];
+        acceptLength = new int[bits];
+        acceptExclude = new boolean[bits];
+        int bit = 0;
+        int run = 0;
+        int maxRun = 0;
+        for (int g = 0; g < tokens.size(); g++) {
+            set(start, bit);
+            int literal = 0;
+            for (char ch : tokens.get(g)) {
+                if (ch == STAR || ch == ANY_PATH) {
+                    set(star, bit);
+                    set(loopOther, bit);
+                    if (ch == ANY_PATH) set(loopSlash, bit);
+                    maxRun = Math.max(maxRun, ++run);
+                } else {
+                    run = 0;
+                    if (ch == ANY) {
+                        // ? 匹配除 '/' 外的任意字符
+                        for (int c = 0; c <= globColumnOf.size(); c++) {
+                            if (c != slashColumn) set(advance, c * words, bit);
+                        }
+                    } else {
+                        set(advance, globColumnOf.get(ch) * words, bit);
+                        literal++;
+                    }
+                }
+                bit++;
+            }
+            run = 0;
+            set(accept, bit);
+            // 只有通配符的规则（如 **）也算命中
+            acceptLength[bit] = Math.max(literal, 1);
+            acceptExclude[bit] = globPatternExclude.get(g);
+            bit++;
+        }
+        starRun = maxRun;
+        int stateWords = words;
+        globStates = ThreadLocal.withInitial(() -> new long[stateWords * 2]);
+    }
+
+    private static char[] tokenize(String glob) {
+        StringBuilder sb = new StringBuilder(glob.length());
+        for (int i = 0; i < glob.length(); i++) {
+            char ch = glob.charAt(i);
+            if (ch == '*') {
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    sb.append(ANY_PATH);
+                    i++;
+                } else {
+                    sb.append(STAR);
+                }
+            } else {
+                sb.append(ch == '?' ? ANY : ch);
+            }
+        }
+        return sb.toString().toCharArray();
+    }
+
+    private static void set(long[] mask, int bit) {
+        set(mask, 0, bit);
+    }
+
+    private static void set(long[] mask, int offset, int bit) {
+        mask[offset + (bit >>> 6)] |= 1L << bit;
+    }
+
+    /**
+     * 编译规则，空字符串会被忽略。
+     */
+    public static PackageMatcher compile(Collection<String> includes, Collection<String> excludes) {
+        List<String> literals = new ArrayList<>();
+        List<Boolean> literalExclude = new ArrayList<>();
+        List<String> globs = new ArrayList<>();
+        List<Boolean> globExclude = new ArrayList<>();
+        for (int pass = 0; pass < 2; pass++) {
+            boolean exclude = pass == 1;
+            for (String pattern : exclude ? excludes : includes) {
+                if (pattern == null || pattern.isEmpty()) {
+                    continue;
+                }
+                if (pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0) {
+                    globs.add(pattern);
+                    globExclude.add(exclude);
+                } else {
+                    literals.add(pattern);
+                    literalExclude.add(exclude);
+                }
+            }
+        }
+        return new PackageMatcher(literals, literalExclude, globs, globExclude);
+    }
+
+    /**
+     * 解析命令行中逗号分隔的包规则。点分形式（不含 '/'）的规则转换为路径形式，
+     * 例如 {@code com.example.**} 转为 {@code com/example/**}；末尾的 {@code .class} 是文件后缀，不参与转换，
+     * {@code com.example.*.class} 转为 {@code com/example/*.class}。已含 '/' 的规则原样保留。
+     */
+    public static List<String> parse(String spec) {
+        List<String> patterns = new ArrayList<>();
+        if (spec == null) {
+            return patterns;
+        }
+        for (String s : spec.split(",")) {
+            s = s.trim();
+            if (!s.isEmpty()) {
+                patterns.add(s.indexOf('/') >= 0 ? s : toPath(s));
+            }
+        }
+        return patterns;
+    }
+
+    private static String toPath(String dotted) {
+        String suffix = dotted.endsWith(".class") ? ".class" : "";
+        return dotted.substring(0, dotted.length() - suffix.length()).replace('.', '/') + suffix;
+    }
+
+    public static PackageMatcher none() {
+        return NONE;
+    }
+
+    public boolean matches(String name) {
+        return match(name) > 0;
+    }
+
+    /**
+     * 返回 1 表示由 include 规则选中，-1 表示被 exclude 规则排除，0 表示没有规则命中。
+     */
+    public int match(String name) {
+        int bestLength = 0;
+        boolean bestExclude = false;
+        int state = 0;
+        for (int i = 0, n = name.length(); i < n; i++) {
+            int c = column(name.charAt(i));
+            state = c < 0 ? 0 : table[state * columns + c];
+            int len = outLength[state];
+            if (len > bestLength || (len == bestLength && len > 0 && outExclude[state])) {
+                bestLength = len;
+                bestExclude = outExclude[state];
+            }
+        }
+        if (words > 0) {
+            int glob = matchGlobs(name, globStates.get());
+            if (glob > (bestLength << 1 | (bestExclude ? 1 : 0))) {
+                bestLength = glob >>> 1;
+                bestExclude = (glob & 1) != 0;
+            }
+        }
+        return bestLength == 0 ? 0 : bestExclude ? -1 : 1;
+    }
+
+    private int[] newRow() {
+        int[] row = new int[columns];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private int column(char ch) {
+        if (ch < 128) {
+            return asciiColumn[ch];
+        }
+        int i = Arrays.binarySearch(otherChars, ch);
+        return i < 0 ? -1 : otherColumns[i];
+    }
+
+    /**
+     * 用 glob 的 NFA 扫描一遍条目名，返回命中的 glob 中最具体者的 (长度 << 1 | exclude)，没有命中时返回 0。
+     */
+    private int matchGlobs(String name, long[] states) {
+        // states 的前 words 个为当前状态，后 words 个为下一状态
+        int cur = 0;
+        int next = words;
+        System.arraycopy(start, 0, states, cur, words);
+        closeStars(states, cur);
+        for (int i = 0, n = name.length(); i < n; i++) {
+            char ch = name.charAt(i);
+            int col = globColumn(ch) * words;
+            long[] loop = ch == '/' ? loopSlash : loopOther;
+            long carry = 0;
+            long alive = 0;
+            for (int w = 0; w < words; w++) {
+                long d = states[cur + w];
+                long a = d & advance[col + w];
+                long v = (a << 1) | carry | (d & loop[w]);
+                carry = a >>> 63;
+                if (ch == '/') v |= start[w];
+                states[next + w] = v;
+                alive |= v;
+            }
+            if (alive == 0) {
+                // 没有活跃状态：下一个起点在下一个 '/' 之后，没有 '/' 时不会再命中
+                int slash = name.indexOf('/', i + 1);
+                if (slash < 0) {
+                    return 0;
+                }
+                i = slash - 1;
+            } else {
+                closeStars(states, next);
+            }
+            int t = cur;
+            cur = next;
+            next = t;
+        }
+        int best = 0;
+        for (int w = 0; w < words; w++) {
+            long m = states[cur + w] & accept[w];
+            while (m != 0) {
+                int bit = (w << 6) + Long.numberOfTrailingZeros(m);
+                m &= m - 1;
+                int result = acceptLength[bit] << 1 | (acceptExclude[bit] ? 1 : 0);
+                if (result > best) best = result;
+            }
+        }
+        return best;
+    }
+
+    // * 与 ** 可以不读字符前进到下一位，连续的通配符传播 starRun 轮
+    private void closeStars(long[] states, int off) {
+        for (int r = 0; r < starRun; r++) {
+            long carry = 0;
+            for (int w = 0; w < words; w++) {
+                long v = states[off + w] | carry;
+                long e = v & star[w];
+                states[off + w] = v | (e << 1);
+                carry = e >>> 63;
+            }
+        }
+    }
+
+    private int globColumn(char ch) {
+        if (ch < 128) {
+            return globAsciiColumn[ch];
+        }
+        int i = Arrays.binarySearch(globOtherChars, ch);
+        return i < 0 ? 0 : globOtherColumns[i];
+    }
+}
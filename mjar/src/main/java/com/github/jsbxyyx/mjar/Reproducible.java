@@ -0,0 +1,52 @@
+package com.github.jsbxyyx.mjar;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * 可重复构建（--reproducible）：相同的输入与选项得到逐字节相同的输出。
+ * <p>
+ * 所有条目的时间统一为环境变量 SOURCE_DATE_EPOCH（秒），未设置时为 1980-02-01 00:00:00。
+ * zip 的 DOS 时间按本地时区换算，这里返回的毫秒数在本地时区下的日期时间等于该时刻的 UTC 日期时间，
+ * 因此写出的时间与运行环境的时区无关。加密器须为确定性的，见 {@link Encryptor#deterministic()}。
+ */
+final class Reproducible {
+    static final String EPOCH_VARIABLE = "SOURCE_DATE_EPOCH";
+    // 1980-02-01T00:00:00Z：DOS 时间可以表示，且不是 1980-01-01 00:00（ZipOutputStream 视其为 1980 年之前的时间）
+    private static final long DEFAULT_EPOCH = 318211200L;
+
+    private Reproducible() {
+    }
+
+    /**
+     * 条目时间，Java 毫秒数，可直接传给 {@link java.util.zip.ZipEntry#setTime(long)} 与 {@link ZipWriter#setTime(long)}。
+     */
+    static long time() {
+        long epoch = DEFAULT_EPOCH;
+        String value = System.getenv(EPOCH_VARIABLE);
+        if (value != null && !value.trim().isEmpty()) {
+            // 早于 DOS 时间范围的值按默认时间处理
+            epoch = Math.max(Long.parseLong(value.trim()), DEFAULT_EPOCH);
+        }
+        return LocalDateTime.ofEpochSecond(epoch, 0, ZoneOffset.UTC)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 返回加密器的确定性版本，并用同一段数据加密两次验证；结果不同时（例如原生库使用随机 IV）抛出 IllegalStateException。
+     */
+    static Encryptor encryptor(Encryptor encryptor) {
+        Encryptor deterministic = encryptor.deterministic();
+        byte[] probe = new byte[64];
+        for (int i = 0; i < probe.length; i++) {
+            probe[i] = (byte) (0xCA + i);
+        }
+        if (!Arrays.equals(deterministic.encrypt(probe.clone()), deterministic.encrypt(probe.clone()))) {
+            throw new IllegalStateException("Encryptor is not deterministic, cannot produce reproducible output: "
+                    + deterministic.identity());
+        }
+        return deterministic;
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.jsbxyyx.mjar;
+
+import com.github.jsbxyyx.mjar.runtime.ScanMetadata;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 处理一个归档时用 ASM 从明文 class 中提取类头，交给 mjar-runtime 的 {@link ScanMetadata.Builder} 编码；
+ * {@link #add(byte[])} 可以在多个工作线程中并发调用。
+ */
+final class ScanMetadataCollector {
+    private final ScanMetadata.Builder builder = new ScanMetadata.Builder();
+    // 无法解析的 class 的条目名，由处理归档的线程在写出元数据后输出
+    private final ConcurrentLinkedQueue<String> unparsed = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 从明文 class 中提取元数据，返回是否成功；无法解析的 class 不记录，运行时回退到解密读取。
+     */
+    boolean add(byte[] classBytes) {
+        final String[] header = new String[2];
+        final int[] access = new int[1];
+        final List<String> interfaces = new ArrayList<>();
+        final List<String> annotations = new ArrayList<>();
+        try {
+            new ClassReader(classBytes).accept(new ClassVisitor(Opcodes.ASM9) {
+                @Override
+                public void visit(int version, int acc, String name, String signature, String superName, String[] ifaces) {
+                    header[0] = name;
+                    header[1] = superName;
+                    // 去掉 ASM 附加的 ACC_DEPRECATED、ACC_RECORD 等伪标志，只保留 class 文件中的 access_flags
+                    access[0] = acc & 0xFFFF;
+                    if (ifaces != null) {
+                        Collections.addAll(interfaces, ifaces);
+                    }
+                }
+
+                @Override
+                public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                    annotations.add(descriptor);
+                    return null;
+                }
+            }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        } catch (RuntimeException e) {
+            return false;
+        }
+        builder.add(new ScanMetadata.ClassInfo(header[0], access[0], header[1],
+                interfaces.toArray(new String[0]), annotations.toArray(new String[0])));
+        return true;
+    }
+
+    void unparsed(String entryName) {
+        unparsed.add(entryName);
+    }
+
+    /**
+     * 无法解析的 class 的条目名，按名称排序。
+     */
+    List<String> unparsed() {
+        List<String> names = new ArrayList<>(unparsed);
+        Collections.sort(names);
+        return names;
+    }
+
+    boolean isEmpty() {
+        return builder.isEmpty();
+    }
+
+    int size() {
+        return builder.size();
+    }
+
+    byte[] toByteArray() throws IOException {
+        return builder.toByteArray();
+    }
+}
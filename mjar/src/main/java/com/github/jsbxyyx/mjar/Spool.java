@@ -0,0 +1,304 @@
+package com.github.jsbxyyx.mjar;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 嵌套归档的暂存区：写入时增量计算 CRC32 与大小（可选同时 DEFLATE 压缩），
+ * 数据先放在堆内存中，所有 Spool 共享的内存预算用完后转存到临时文件。
+ * 因此无论嵌套 jar 有多大，堆上占用都不会超过 {@link #setMemoryLimit(long)} 设定的上限。
+ */
+public class Spool extends OutputStream {
+    private static final int MIN_CHUNK = 8 * 1024;
+    static final long DEFAULT_MEMORY_LIMIT = 64L << 20;
+    private static final AtomicLong memoryBudget = new AtomicLong(DEFAULT_MEMORY_LIMIT);
+
+    private final CRC32 crc = new CRC32();
+    private final Deflater deflater;
+    private final int level;
+    private byte[] deflateBuffer;
+    private long size;
+    private long length;
+
+    private byte[] buf;
+    private int count;
+    private long reserved;
+
+    private File file;
+    private FileChannel fileOut;
+    private ByteBuffer fileBuffer;
+    private boolean closed;
+
+    private Spool(Deflater deflater, int level) {
+        this.deflater = deflater;
+        this.level = level;
+    }
+
+    /**
+     * 数据按原样暂存，适用于 STORED 条目。
+     */
+    public static Spool stored() {
+        return new Spool(null, 0);
+    }
+
+    /**
+     * 写入的数据会被压缩后暂存，CRC 与大小仍按压缩前的数据计算；level 为 0 时等同于 {@link #stored()}。
+     */
+    public static Spool deflated(int level) {
+        return level == 0 ? stored() : new Spool(ZipCodecs.deflater(level), level);
+    }
+
+    public static void setMemoryLimit(long bytes) {
+        memoryBudget.set(bytes);
+    }
+
+    public boolean isDeflated() {
+        return deflater != null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("spool closed");
+        }
+        long t = Metrics.start();
+        crc.update(b, off, len);
+        Metrics.stop(Metrics.Phase.CRC, t, len);
+        size += len;
+        if (deflater == null) {
+            store(b, off, len);
+            return;
+        }
+        t = Metrics.start();
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            drain();
+        }
+        Metrics.stop(Metrics.Phase.COMPRESS, t, len);
+    }
+
+    /**
+     * 把输入流的剩余内容全部写入。
+     */
+    public void writeAll(InputStream in) throws IOException {
+        byte[] b = BufferPool.acquire(64 * 1024);
+        try {
+            int n;
+            while ((n = in.read(b)) != -1) {
+                write(b, 0, n);
+            }
+        } finally {
+            BufferPool.release(b);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (deflater != null) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain();
+            }
+            ZipCodecs.release(deflater, level);
+            BufferPool.release(deflateBuffer);
+            deflateBuffer = null;
+        }
+        closed = true;
+        if (fileOut != null) {
+            try {
+                flushFileBuffer();
+            } finally {
+                BufferPool.release(fileBuffer);
+                fileBuffer = null;
+                fileOut.close();
+            }
+        }
+    }
+
+    public long getCrc() {
+        return crc.getValue();
+    }
+
+    /**
+     * 写入的（压缩前）数据大小。
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * 暂存的（压缩后）数据大小。
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        if (file == null) {
+            out.write(buf == null ? new byte[0] : buf, 0, count);
+            return;
+        }
+        byte[] b = BufferPool.acquire(64 * 1024);
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(b)) != -1) {
+                out.write(b, 0, n);
+            }
+        } finally {
+            BufferPool.release(b);
+        }
+    }
+
+    /**
+     * 以 ByteBuffer 形式访问暂存的数据，已转存到文件时通过内存映射读取，不占用堆。
+     */
+    public ByteBuffer toByteBuffer() throws IOException {
+        if (file == null) {
+            return ByteBuffer.wrap(buf == null ? new byte[0] : buf, 0, count);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+    }
+
+    /**
+     * 释放内存预算并删除临时文件；出错时未 close() 就释放的，同时归还 Deflater 并关闭临时文件。
+     */
+    public void release() {
+        if (!closed) {
+            closed = true;
+            if (deflater != null) {
+                ZipCodecs.release(deflater, level);
+                BufferPool.release(deflateBuffer);
+                deflateBuffer = null;
+            }
+            if (fileOut != null) {
+                BufferPool.release(fileBuffer);
+                fileBuffer = null;
+                try {
+                    fileOut.close();
+                } catch (IOException ignored) {
+                    // 只是放弃暂存的数据，关闭失败不影响随后删除文件
+                }
+            }
+        }
+        BufferPool.release(buf);
+        buf = null;
+        count = 0;
+        memoryBudget.addAndGet(reserved);
+        reserved = 0;
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private void drain() throws IOException {
+        if (deflateBuffer == null) {
+            deflateBuffer = BufferPool.acquire(64 * 1024);
+        }
+        int n = deflater.deflate(deflateBuffer, 0, deflateBuffer.length);
+        if (n > 0) {
+            store(deflateBuffer, 0, n);
+        }
+    }
+
+    private void store(byte[] b, int off, int len) throws IOException {
+        length += len;
+        if (file == null) {
+            int capacity = buf == null ? 0 : buf.length;
+            if (count + len <= capacity) {
+                System.arraycopy(b, off, buf, count, len);
+                count += len;
+                return;
+            }
+            long newCapacity = Math.max(Math.max((long) count + len, (long) capacity * 2), MIN_CHUNK);
+            // 不超过 1M 时按 BufferPool 的尺寸等级取整，旧数组归还给池
+            if (newCapacity <= Integer.MAX_VALUE - 8) {
+                newCapacity = BufferPool.capacityFor((int) newCapacity);
+            }
+            if (newCapacity <= Integer.MAX_VALUE - 8 && reserve(newCapacity - capacity)) {
+                byte[] grown = BufferPool.acquire((int) newCapacity);
+                if (count > 0) {
+                    System.arraycopy(buf, 0, grown, 0, count);
+                }
+                BufferPool.release(buf);
+                buf = grown;
+                System.arraycopy(b, off, buf, count, len);
+                count += len;
+                return;
+            }
+            spill();
+        }
+        writeFile(b, off, len);
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile("mjar-", ".spool");
+        fileOut = new FileOutputStream(file).getChannel();
+        // 启用了堆外缓冲区时，经由 FileChannel 写出不再需要 JDK 内部的临时直接缓冲区
+        fileBuffer = BufferPool.acquireBuffer(64 * 1024);
+        if (count > 0) {
+            writeFile(buf, 0, count);
+        }
+        BufferPool.release(buf);
+        buf = null;
+        count = 0;
+        memoryBudget.addAndGet(reserved);
+        reserved = 0;
+    }
+
+    private void writeFile(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!fileBuffer.hasRemaining()) {
+                flushFileBuffer();
+            }
+            int n = Math.min(len, fileBuffer.remaining());
+            fileBuffer.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    private void flushFileBuffer() throws IOException {
+        fileBuffer.flip();
+        while (fileBuffer.hasRemaining()) {
+            fileOut.write(fileBuffer);
+        }
+        fileBuffer.clear();
+    }
+
+    private boolean reserve(long bytes) {
+        while (true) {
+            long available = memoryBudget.get();
+            if (available < bytes) {
+                return false;
+            }
+            if (memoryBudget.compareAndSet(available, available - bytes)) {
+                reserved += bytes;
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.github.jsbxyyx.mjar;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 增量加密用的磁盘缓存：以输入内容的 SHA-256（加上加密器、补丁版本等影响输出的因素）为键，
+ * 保存加密或打补丁后的结果。命中时会更新文件的修改时间，{@link #evict()} 按修改时间做 LRU 淘汰。
+ */
+public class TransformCache {
+    private final File dir;
+    private final long maxBytes;
+    private final byte[] salt;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong hitBytes = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * @param salt 影响所有输出的因素（加密器标识、补丁版本等），任一变化都会使已有缓存失效
+     */
+    public TransformCache(File dir, long maxBytes, String salt) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.salt = salt.getBytes(StandardCharsets.UTF_8);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create cache directory: " + dir);
+        }
+    }
+
+    public String key(String kind, byte[] content) {
+        MessageDigest md = sha256();
+        md.update(salt);
+        md.update(kind.getBytes(StandardCharsets.UTF_8));
+        md.update(content);
+        return hex(md.digest());
+    }
+
+    public String key(String kind, ByteBuffer content) {
+        MessageDigest md = sha256();
+        md.update(salt);
+        md.update(kind.getBytes(StandardCharsets.UTF_8));
+        md.update(content.duplicate());
+        return hex(md.digest());
+    }
+
+    /**
+     * 返回缓存的结果，未命中时返回 null。
+     */
+    public byte[] get(String key) throws IOException {
+        File f = file(key);
+        if (!f.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        byte[] bytes = Files.readAllBytes(f.toPath());
+        touch(f, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * 以流的方式读取缓存的结果（用于嵌套归档），未命中时返回 null。
+     */
+    public InputStream open(String key) throws IOException {
+        File f = file(key);
+        if (!f.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        touch(f, f.length());
+        return new FileInputStream(f);
+    }
+
+    public void put(String key, byte[] value) throws IOException {
+        File tmp = tempFile();
+        try (OutputStream os = new FileOutputStream(tmp)) {
+            os.write(value);
+        }
+        commit(key, tmp);
+    }
+
+    /**
+     * 返回一个输出流，写入的数据同时转发给 target 并记录到缓存；close 时才提交缓存，
+     * 不会关闭 target。处理失败时调用 {@link Recorder#discard()} 丢弃。
+     */
+    public Recorder record(String key, OutputStream target) throws IOException {
+        return new Recorder(key, target, tempFile());
+    }
+
+    /**
+     * 按最近使用时间淘汰，直到缓存总大小不超过上限。
+     */
+    public void evict() {
+        List<File> files = new ArrayList<>();
+        File[] shards = dir.listFiles();
+        if (shards == null) {
+            return;
+        }
+        for (File shard : shards) {
+            File[] fs = shard.isDirectory() ? shard.listFiles() : null;
+            if (fs != null) {
+                for (File f : fs) {
+                    if (f.isFile() && !f.getName().endsWith(".tmp")) {
+                        files.add(f);
+                    }
+                }
+            }
+        }
+        long total = 0;
+        long[] modified = new long[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            total += files.get(i).length();
+            modified[i] = files.get(i).lastModified();
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(modified[a], modified[b]));
+        for (int i = 0; i < order.length && total > maxBytes; i++) {
+            File f = files.get(order[i]);
+            long len = f.length();
+            if (f.delete()) {
+                total -= len;
+                evicted.incrementAndGet();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getHitBytes() {
+        return hitBytes.get();
+    }
+
+    public long getEvicted() {
+        return evicted.get();
+    }
+
+    public String report() {
+        long h = hits.get();
+        long m = misses.get();
+        long total = h + m;
+        return "Cache: " + h + " hits, " + m + " misses"
+                + (total > 0 ? String.format(" (%.1f%% hit rate)", h * 100.0 / total) : "")
+                + ", " + hitBytes.get() + " bytes reused, " + evicted.get() + " evicted";
+    }
+
+    private void touch(File f, long length) {
+        hits.incrementAndGet();
+        hitBytes.addAndGet(length);
+        f.setLastModified(System.currentTimeMillis());
+    }
+
+    private File file(String key) {
+        return new File(new File(dir, key.substring(0, 2)), key.substring(2));
+    }
+
+    private File tempFile() throws IOException {
+        return File.createTempFile("entry-", ".tmp", dir);
+    }
+
+    private void commit(String key, File tmp) throws IOException {
+        File target = file(key);
+        File parent = target.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            tmp.delete();
+            throw new IOException("cannot create cache directory: " + parent);
+        }
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public final class Recorder extends FilterOutputStream {
+        private final String key;
+        private final File tmp;
+        private final OutputStream copy;
+
+        private Recorder(String key, OutputStream target, File tmp) throws IOException {
+            super(target);
+            this.key = key;
+            this.tmp = tmp;
+            this.copy = new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            copy.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            copy.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            copy.close();
+            commit(key, tmp);
+        }
+
+        public void discard() {
+            try {
+                copy.close();
+            } catch (IOException ignored) {
+                // 丢弃时忽略
+            }
+            tmp.delete();
+        }
+    }
+}
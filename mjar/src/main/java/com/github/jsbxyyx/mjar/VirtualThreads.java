@@ -0,0 +1,33 @@
+package com.github.jsbxyyx.mjar;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程（--exec=virtual）。工具以 Java 8 为目标编译，JDK 21 的 API 通过反射调用：
+ * {@code Thread.ofVirtual().name(prefix, 1).factory()} 与 {@code Executors.newThreadPerTaskExecutor(factory)}。
+ * 运行在 Java 8–20 上（19、20 未开启预览）时不可用，由调用方回退到平台线程。
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 每个任务一个虚拟线程的 executor，线程名为 prefix 加序号；不支持虚拟线程时返回 null。
+     */
+    static ExecutorService newExecutor(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // 没有这些方法，或预览版 JDK 未开启预览（InvocationTargetException 包装 UnsupportedOperationException）
+            return null;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.jsbxyyx.mjar;
+
+import com.github.jsbxyyx.mjar.runtime.EncryptedIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.jar.JarFile;
+
+/**
+ * 训练运行中记录的类加载顺序（--trace=FILE），用于启动预热与热点条目重排。
+ * <p>
+ * 记录文件每行一个类名，点分或内部形式均可（{@code com.example.Foo}、{@code com/example/Foo.class}），忽略空行与 # 开头的行；
+ * 也可以直接使用 JVM 的类加载日志：{@code -verbose:class}（JDK 8 的 {@code [Loaded com.example.Foo from ...]}）
+ * 或 {@code -Xlog:class+load}（{@code [...][info][class,load] com.example.Foo source: ...}）。
+ * 类名第一次出现的位置即其优先级，越早加载越靠前。
+ * <p>
+ * 每个含加密 class 的归档中，出现在记录里的加密 class 按优先级写入 {@link #NAME}（紧跟 manifest），
+ * 每行为 {@code 优先级 类名}，类名为内部形式；运行时 mjar-runtime 的 Warmup 合并所有归档中的列表，
+ * 按优先级在后台线程中提前解密。--reorder-hot 时记录中的 class 还会移到归档开头，
+ * 启动时读取的数据集中在文件的同一段，减少缺页与磁盘寻道。
+ */
+final class WarmupTrace {
+    static final String NAME = "META-INF/mjar/warmup.list";
+    private static final String LOADED = "[Loaded ";
+    private static final String CLASS_LOAD = "[class,load] ";
+
+    // 内部形式的类名 -> 优先级（在记录中第一次出现的位置）
+    private final Map<String, Integer> ranks;
+    // 类名顺序的摘要，作为嵌套归档缓存键的一部分
+    private final String digest;
+
+    private WarmupTrace(Map<String, Integer> ranks, String digest) {
+        this.ranks = ranks;
+        this.digest = digest;
+    }
+
+    static WarmupTrace load(File file) throws IOException {
+        Map<String, Integer> ranks = new HashMap<>();
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            String name = parse(line);
+            if (name != null && !ranks.containsKey(name)) {
+                ranks.put(name, ranks.size());
+                md.update((name + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return new WarmupTrace(ranks, TransformCache.hex(md.digest()));
+    }
+
+    /**
+     * 一行记录中的类名（内部形式），不是类名的行返回 null。
+     */
+    static String parse(String line) {
+        String s = line.trim();
+        if (s.isEmpty() || s.startsWith("#")) {
+            return null;
+        }
+        if (s.startsWith(LOADED)) {
+            s = s.substring(LOADED.length());
+        } else if (s.contains(CLASS_LOAD)) {
+            s = s.substring(s.indexOf(CLASS_LOAD) + CLASS_LOAD.length());
+        } else if (s.startsWith("[")) {
+            // 类加载日志中的其他行，如 [Opened ...]
+            return null;
+        }
+        int space = s.indexOf(' ');
+        if (space >= 0) s = s.substring(0, space);
+        if (s.endsWith(".class")) s = s.substring(0, s.length() - ".class".length());
+        return s.isEmpty() ? null : s.replace('.', '/');
+    }
+
+    int size() {
+        return ranks.size();
+    }
+
+    String digest() {
+        return digest;
+    }
+
+    /**
+     * 条目的优先级，不是 class 或不在记录中时返回 -1。
+     */
+    int rank(String entryName) {
+        if (!entryName.endsWith(".class")) {
+            return -1;
+        }
+        Integer rank = ranks.get(EncryptedIndex.className(entryName));
+        return rank == null ? -1 : rank;
+    }
+
+    /**
+     * 归档的预热列表：满足 encrypted 且在记录中的 class，按优先级排列；没有时返回 null。
+     */
+    byte[] warmupList(List<MappedZipFile.Entry> entries, Predicate<String> encrypted) {
+        List<MappedZipFile.Entry> hot = new ArrayList<>();
+        for (MappedZipFile.Entry entry : entries) {
+            if (rank(entry.getName()) >= 0 && encrypted.test(entry.getName())) {
+                hot.add(entry);
+            }
+        }
+        if (hot.isEmpty()) {
+            return null;
+        }
+        hot.sort(Comparator.comparingInt(e -> rank(e.getName())));
+        StringBuilder sb = new StringBuilder();
+        for (MappedZipFile.Entry entry : hot) {
+            sb.append(rank(entry.getName())).append(' ').append(EncryptedIndex.className(entry.getName())).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 把记录中的 class 按优先级移到开头的 META-INF/ 目录与 manifest 之后，其余条目保持原有顺序。
+     */
+    List<MappedZipFile.Entry> reorder(List<MappedZipFile.Entry> entries) {
+        List<MappedZipFile.Entry> result = new ArrayList<>(entries.size());
+        List<MappedZipFile.Entry> hot = new ArrayList<>();
+        List<MappedZipFile.Entry> rest = new ArrayList<>();
+        int i = 0;
+        while (i < entries.size() && ("META-INF/".equalsIgnoreCase(entries.get(i).getName())
+                || JarFile.MANIFEST_NAME.equalsIgnoreCase(entries.get(i).getName()))) {
+            result.add(entries.get(i++));
+        }
+        for (; i < entries.size(); i++) {
+            MappedZipFile.Entry entry = entries.get(i);
+            (rank(entry.getName()) >= 0 ? hot : rest).add(entry);
+        }
+        hot.sort(Comparator.comparingInt(e -> rank(e.getName())));
+        result.addAll(hot);
+        result.addAll(rest);
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.jsbxyyx.mjar;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 共享的 Inflater / Deflater 池与线程内的 CRC32。Inflater 与 Deflater 各自持有一块本地内存（zlib 状态），
+ * 每个条目都新建再 end() 的开销在小 class 上相当可观；这里按 {@link BufferPool} 的方式分条带保留少量实例，
+ * 借出后归还时 reset()，池满时归还的实例直接 end()。池不跟随线程，工作线程或虚拟线程结束后
+ * 留在池中的本地内存仍有上限，{@link #clear()} 可在线程池关闭时一并释放。
+ */
+final class ZipCodecs {
+    private static final int SLOTS = 2;
+    // 每个压缩级别（-1 即默认级别，以及 0-9）一组，下标为 level + 1
+    private static final int LEVELS = 11;
+    private static final int STRIPES = stripes();
+
+    private static final AtomicReferenceArray<Inflater> inflaters = new AtomicReferenceArray<>(STRIPES * SLOTS);
+    private static final AtomicReferenceArray<Deflater> deflaters = new AtomicReferenceArray<>(LEVELS * STRIPES * SLOTS);
+    private static final ThreadLocal<CRC32> crcs = ThreadLocal.withInitial(CRC32::new);
+
+    private ZipCodecs() {
+    }
+
+    /**
+     * 借出一个 nowrap 模式的 Inflater，用完后必须 {@link #release(Inflater)}。
+     */
+    static Inflater inflater() {
+        int base = base(0);
+        for (int i = 0; i < SLOTS; i++) {
+            Inflater inf = inflaters.getAndSet(base + i, null);
+            if (inf != null) {
+                return inf;
+            }
+        }
+        return new Inflater(true);
+    }
+
+    static void release(Inflater inf) {
+        inf.reset();
+        int base = base(0);
+        for (int i = 0; i < SLOTS; i++) {
+            if (inflaters.compareAndSet(base + i, null, inf)) {
+                return;
+            }
+        }
+        inf.end();
+    }
+
+    /**
+     * 借出一个指定级别、nowrap 模式的 Deflater，用完后必须 {@link #release(Deflater, int)}。
+     */
+    static Deflater deflater(int level) {
+        int base = base(level + 1);
+        for (int i = 0; i < SLOTS; i++) {
+            Deflater def = deflaters.getAndSet(base + i, null);
+            if (def != null) {
+                return def;
+            }
+        }
+        return new Deflater(level, true);
+    }
+
+    /**
+     * 归还 Deflater，压缩到一半的实例也可以归还，reset() 会丢弃未完成的状态。
+     */
+    static void release(Deflater def, int level) {
+        def.reset();
+        int base = base(level + 1);
+        for (int i = 0; i < SLOTS; i++) {
+            if (deflaters.compareAndSet(base + i, null, def)) {
+                return;
+            }
+        }
+        def.end();
+    }
+
+    /**
+     * end() 池中所有空闲的实例；之后归还的实例照常入池。
+     */
+    static void clear() {
+        for (int i = 0; i < inflaters.length(); i++) {
+            Inflater inf = inflaters.getAndSet(i, null);
+            if (inf != null) {
+                inf.end();
+            }
+        }
+        for (int i = 0; i < deflaters.length(); i++) {
+            Deflater def = deflaters.getAndSet(i, null);
+            if (def != null) {
+                def.end();
+            }
+        }
+    }
+
+    /**
+     * 当前线程的 CRC32，已 reset()，在下一次调用前有效。
+     */
+    static CRC32 crc32() {
+        CRC32 crc = crcs.get();
+        crc.reset();
+        return crc;
+    }
+
+    private static int base(int group) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        return (group * STRIPES + stripe) * SLOTS;
+    }
+
+    private static int stripes() {
+        int n = Runtime.getRuntime().availableProcessors();
+        return Integer.highestOneBit(Math.max(n, 1) * 2 - 1);
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.jsbxyyx.mjar;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * 一个已经准备好写入 zip 的条目：数据已压缩（或 STORED），CRC 与大小已计算完毕。
+ * 构造过程（压缩、CRC）可以在工作线程中完成，{@link ZipWriter} 只负责按顺序拼接。
+ */
+public class ZipRecord {
+    final String name;
+    final long dosTime;
+    final int method;
+    final long crc;
+    final long size;
+    final byte[] data;
+    final int length;
+    // 原样复制时直接引用源归档中的压缩数据
+    final ByteBuffer raw;
+    // 嵌套归档的输出暂存在 Spool 中，写出后释放
+    final Spool spool;
+    // data 取自 BufferPool，写出后归还
+    final boolean pooled;
+
+    ZipRecord(String name, long dosTime, int method, long crc, long size, byte[] data, int length) {
+        this(name, dosTime, method, crc, size, data, length, false);
+    }
+
+    ZipRecord(String name, long dosTime, int method, long crc, long size, byte[] data, int length, boolean pooled) {
+        this.name = name;
+        this.dosTime = dosTime;
+        this.method = method;
+        this.crc = crc;
+        this.size = size;
+        this.data = data;
+        this.length = length;
+        this.raw = null;
+        this.spool = null;
+        this.pooled = pooled;
+    }
+
+    ZipRecord(String name, long dosTime, int method, long crc, long size, ByteBuffer raw) {
+        this.name = name;
+        this.dosTime = dosTime;
+        this.method = method;
+        this.crc = crc;
+        this.size = size;
+        this.data = null;
+        this.length = raw.remaining();
+        this.raw = raw;
+        this.spool = null;
+        this.pooled = false;
+    }
+
+    ZipRecord(String name, long dosTime, Spool spool) {
+        this.name = name;
+        this.dosTime = dosTime;
+        this.method = spool.isDeflated() ? ZipEntry.DEFLATED : ZipEntry.STORED;
+        this.crc = spool.getCrc();
+        this.size = spool.getSize();
+        this.data = null;
+        this.length = 0;
+        this.raw = null;
+        this.spool = spool;
+        this.pooled = false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMethod() {
+        return method;
+    }
+
+    public long getCrc() {
+        return crc;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getCompressedSize() {
+        return spool != null ? spool.getLength() : length;
+    }
+
+    /**
+     * 按给定压缩级别准备条目，level 为 0 时直接 STORED。
+     */
+    public static ZipRecord of(String name, long time, byte[] bytes, int level) {
+        return level == 0 ? stored(name, time, bytes) : deflated(name, time, bytes, level);
+    }
+
+    /**
+     * 未改动的条目：原始压缩数据、压缩方式、CRC 和时间都沿用源归档，不解压也不重新压缩。
+     */
+    public static ZipRecord raw(MappedZipFile.Entry entry, ByteBuffer rawData) {
+        return new ZipRecord(entry.name, entry.dosTime, entry.method, entry.crc, entry.size, rawData);
+    }
+
+    /**
+     * 已关闭的 Spool，CRC 与大小在写入 Spool 时已经增量计算完毕。
+     */
+    public static ZipRecord spooled(String name, long time, Spool spool) {
+        return new ZipRecord(name, javaToDosTime(time), spool);
+    }
+
+    public static ZipRecord stored(String name, long time, byte[] bytes) {
+        return new ZipRecord(name, javaToDosTime(time), ZipEntry.STORED, timedCrc32(bytes), bytes.length, bytes, bytes.length);
+    }
+
+    /**
+     * 压缩结果写在 BufferPool 的缓冲区中，由 {@link ZipWriter} 写出后归还；Deflater 取自线程内的缓存。
+     */
+    public static ZipRecord deflated(String name, long time, byte[] bytes, int level) {
+        long t = Metrics.start();
+        Deflater deflater = ZipCodecs.deflater(level);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            byte[] out = BufferPool.acquire(bytes.length + (bytes.length >> 10) + 64);
+            int len = 0;
+            while (!deflater.finished()) {
+                if (len == out.length) {
+                    byte[] grown = BufferPool.acquire(out.length * 2);
+                    System.arraycopy(out, 0, grown, 0, len);
+                    BufferPool.release(out);
+                    out = grown;
+                }
+                len += deflater.deflate(out, len, out.length - len);
+            }
+            Metrics.stop(Metrics.Phase.COMPRESS, t, bytes.length);
+            return new ZipRecord(name, javaToDosTime(time), ZipEntry.DEFLATED, timedCrc32(bytes), bytes.length, out, len, true);
+        } finally {
+            ZipCodecs.release(deflater, level);
+        }
+    }
+
+    static long crc32(byte[] bytes) {
+        CRC32 crc = ZipCodecs.crc32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    private static long timedCrc32(byte[] bytes) {
+        long t = Metrics.start();
+        long crc = crc32(bytes);
+        Metrics.stop(Metrics.Phase.CRC, t, bytes.length);
+        return crc;
+    }
+
+    static long javaToDosTime(long time) {
+        if (time == -1) {
+            time = System.currentTimeMillis();
+        }
+        LocalDateTime d = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        int year = d.getYear();
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (year - 1980) << 25)
+                | (d.getMonthValue() << 21)
+                | (d.getDayOfMonth() << 16)
+                | (d.getHour() << 11)
+                | (d.getMinute() << 5)
+                | (d.getSecond() >> 1);
+    }
+}
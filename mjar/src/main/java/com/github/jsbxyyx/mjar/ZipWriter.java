@@ -0,0 +1,260 @@
+package com.github.jsbxyyx.mjar;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * 直接输出 zip 格式的写入器，条目数据由 {@link ZipRecord} 预先压缩好，
+ * 这里只负责写本地文件头、数据以及最后的中央目录（必要时使用 ZIP64）。
+ * 由于大小与 CRC 事先已知，本地文件头中直接写入真实值，不使用数据描述符。
+ */
+public class ZipWriter {
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private final OutputStream out;
+    private final List<CentralEntry> entries = new ArrayList<>();
+    private final byte[] header = new byte[64];
+    private byte[] copyBuffer;
+    private long written;
+    private boolean finished;
+    // 可重复构建时所有条目使用同一个 DOS 时间，-1 表示沿用各条目自己的时间
+    private long fixedDosTime = -1;
+
+    public ZipWriter(OutputStream out) {
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+    }
+
+    /**
+     * 此后写出的所有条目（包括原样复制的条目）都使用 time 作为修改时间。
+     */
+    public void setTime(long time) {
+        fixedDosTime = ZipRecord.javaToDosTime(time);
+    }
+
+    public void writeManifest(Manifest manifest, long time, int level) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        manifest.write(baos);
+        write(ZipRecord.of(JarFile.MANIFEST_NAME, time, baos.toByteArray(), level));
+    }
+
+    public void write(ZipRecord record) throws IOException {
+        byte[] name = record.name.getBytes(StandardCharsets.UTF_8);
+        long size = record.size;
+        long compressedSize = record.getCompressedSize();
+        boolean zip64 = size >= ZIP64_MAGIC || compressedSize >= ZIP64_MAGIC;
+
+        long dosTime = fixedDosTime != -1 ? fixedDosTime : record.dosTime;
+        CentralEntry ce = new CentralEntry(name, record, dosTime, written);
+        entries.add(ce);
+
+        int p = 0;
+        p = putInt(header, p, LOCAL_HEADER_SIG);
+        p = putShort(header, p, versionNeeded(record.method, zip64));
+        p = putShort(header, p, FLAG_UTF8);
+        p = putShort(header, p, record.method);
+        p = putInt(header, p, (int) dosTime);
+        p = putInt(header, p, (int) record.crc);
+        p = putInt(header, p, (int) (zip64 ? ZIP64_MAGIC : compressedSize));
+        p = putInt(header, p, (int) (zip64 ? ZIP64_MAGIC : size));
+        p = putShort(header, p, name.length);
+        p = putShort(header, p, zip64 ? 20 : 0);
+        writeBytes(header, 0, p);
+        writeBytes(name, 0, name.length);
+        if (zip64) {
+            p = 0;
+            p = putShort(header, p, ZIP64_EXTRA_ID);
+            p = putShort(header, p, 16);
+            p = putLong(header, p, size);
+            p = putLong(header, p, compressedSize);
+            writeBytes(header, 0, p);
+        }
+        if (record.raw != null) {
+            writeBuffer(record.raw.duplicate());
+        } else if (record.spool != null) {
+            // Spool 写出后即释放其内存预算与临时文件
+            try {
+                record.spool.writeTo(out);
+                written += compressedSize;
+            } finally {
+                record.spool.release();
+            }
+        } else {
+            writeBytes(record.data, 0, record.length);
+            if (record.pooled) {
+                BufferPool.release(record.data);
+            }
+        }
+    }
+
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        long cdStart = written;
+        for (CentralEntry ce : entries) {
+            writeCentralHeader(ce);
+        }
+        long cdSize = written - cdStart;
+        int count = entries.size();
+        if (count >= ZIP64_MAGIC_COUNT || cdStart >= ZIP64_MAGIC || cdSize >= ZIP64_MAGIC) {
+            long zip64End = written;
+            int p = 0;
+            p = putInt(header, p, ZIP64_END_SIG);
+            p = putLong(header, p, 44);
+            p = putShort(header, p, 45);
+            p = putShort(header, p, 45);
+            p = putInt(header, p, 0);
+            p = putInt(header, p, 0);
+            p = putLong(header, p, count);
+            p = putLong(header, p, count);
+            p = putLong(header, p, cdSize);
+            p = putLong(header, p, cdStart);
+            writeBytes(header, 0, p);
+            p = 0;
+            p = putInt(header, p, ZIP64_LOCATOR_SIG);
+            p = putInt(header, p, 0);
+            p = putLong(header, p, zip64End);
+            p = putInt(header, p, 1);
+            writeBytes(header, 0, p);
+        }
+        int p = 0;
+        p = putInt(header, p, END_SIG);
+        p = putShort(header, p, 0);
+        p = putShort(header, p, 0);
+        p = putShort(header, p, Math.min(count, ZIP64_MAGIC_COUNT));
+        p = putShort(header, p, Math.min(count, ZIP64_MAGIC_COUNT));
+        p = putInt(header, p, (int) Math.min(cdSize, ZIP64_MAGIC));
+        p = putInt(header, p, (int) Math.min(cdStart, ZIP64_MAGIC));
+        p = putShort(header, p, 0);
+        writeBytes(header, 0, p);
+        out.flush();
+        BufferPool.release(copyBuffer);
+        copyBuffer = null;
+    }
+
+    private void writeCentralHeader(CentralEntry ce) throws IOException {
+        boolean sizes64 = ce.size >= ZIP64_MAGIC || ce.compressedSize >= ZIP64_MAGIC;
+        boolean offset64 = ce.offset >= ZIP64_MAGIC;
+        int extraLen = (sizes64 ? 16 : 0) + (offset64 ? 8 : 0);
+        int p = 0;
+        p = putInt(header, p, CENTRAL_HEADER_SIG);
+        p = putShort(header, p, versionNeeded(ce.method, extraLen > 0));
+        p = putShort(header, p, versionNeeded(ce.method, extraLen > 0));
+        p = putShort(header, p, FLAG_UTF8);
+        p = putShort(header, p, ce.method);
+        p = putInt(header, p, (int) ce.dosTime);
+        p = putInt(header, p, (int) ce.crc);
+        p = putInt(header, p, (int) (sizes64 ? ZIP64_MAGIC : ce.compressedSize));
+        p = putInt(header, p, (int) (sizes64 ? ZIP64_MAGIC : ce.size));
+        p = putShort(header, p, ce.name.length);
+        p = putShort(header, p, extraLen > 0 ? extraLen + 4 : 0);
+        p = putShort(header, p, 0);
+        p = putShort(header, p, 0);
+        p = putShort(header, p, 0);
+        p = putInt(header, p, 0);
+        p = putInt(header, p, (int) (offset64 ? ZIP64_MAGIC : ce.offset));
+        writeBytes(header, 0, p);
+        writeBytes(ce.name, 0, ce.name.length);
+        if (extraLen > 0) {
+            p = 0;
+            p = putShort(header, p, ZIP64_EXTRA_ID);
+            p = putShort(header, p, extraLen);
+            if (sizes64) {
+                p = putLong(header, p, ce.size);
+                p = putLong(header, p, ce.compressedSize);
+            }
+            if (offset64) {
+                p = putLong(header, p, ce.offset);
+            }
+            writeBytes(header, 0, p);
+        }
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void writeBytes(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        written += len;
+    }
+
+    private void writeBuffer(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            writeBytes(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            return;
+        }
+        if (copyBuffer == null) {
+            copyBuffer = BufferPool.acquire(64 * 1024);
+        }
+        while (buffer.hasRemaining()) {
+            int n = Math.min(buffer.remaining(), copyBuffer.length);
+            buffer.get(copyBuffer, 0, n);
+            writeBytes(copyBuffer, 0, n);
+        }
+    }
+
+    private static int versionNeeded(int method, boolean zip64) {
+        if (zip64) {
+            return 45;
+        }
+        return method == ZipEntry.DEFLATED ? 20 : 10;
+    }
+
+    private static int putShort(byte[] b, int p, int v) {
+        b[p] = (byte) v;
+        b[p + 1] = (byte) (v >>> 8);
+        return p + 2;
+    }
+
+    private static int putInt(byte[] b, int p, int v) {
+        b[p] = (byte) v;
+        b[p + 1] = (byte) (v >>> 8);
+        b[p + 2] = (byte) (v >>> 16);
+        b[p + 3] = (byte) (v >>> 24);
+        return p + 4;
+    }
+
+    private static int putLong(byte[] b, int p, long v) {
+        p = putInt(b, p, (int) v);
+        return putInt(b, p, (int) (v >>> 32));
+    }
+
+    private static final class CentralEntry {
+        final byte[] name;
+        final int method;
+        final long dosTime;
+        final long crc;
+        final long size;
+        final long compressedSize;
+        final long offset;
+
+        CentralEntry(byte[] name, ZipRecord record, long dosTime, long offset) {
+            this.name = name;
+            this.method = record.method;
+            this.dosTime = dosTime;
+            this.crc = record.crc;
+            this.size = record.size;
+            this.compressedSize = record.getCompressedSize();
+            this.offset = offset;
+        }
+    }
+}
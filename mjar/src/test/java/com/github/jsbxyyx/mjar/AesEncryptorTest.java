@@ -0,0 +1,56 @@
+package com.github.jsbxyyx.mjar;
+
+import com.github.jsbxyyx.mjar.runtime.AesDecryptor;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+/**
+ * aes-gcm / aes-ctr 的输出能被 mjar-runtime 的 AesDecryptor 解密，明文 class 与错误密钥的输入原样返回。
+ */
+public class AesEncryptorTest {
+    private static final byte[] KEY = "0123456789abcdef".getBytes();
+    private static final byte[] OTHER_KEY = "fedcba9876543210".getBytes();
+
+    @Test
+    public void gcmRoundTrip() {
+        roundTrip(true);
+    }
+
+    @Test
+    public void ctrRoundTrip() {
+        roundTrip(false);
+    }
+
+    private static void roundTrip(boolean gcm) {
+        byte[] clazz = classBytes(1000);
+        AesDecryptor decryptor = new AesDecryptor(gcm, KEY);
+        for (Encryptor encryptor : new Encryptor[]{new AesEncryptor(gcm, KEY), new AesEncryptor(gcm, KEY).deterministic()}) {
+            byte[] encrypted = encryptor.encrypt(clazz);
+            assertEquals((gcm ? 12 + 16 : 16) + clazz.length, encrypted.length);
+            assertFalse(Arrays.equals(clazz, Arrays.copyOfRange(encrypted, encrypted.length - clazz.length, encrypted.length)));
+            assertArrayEquals(clazz, decryptor.maybeDecrypt(encrypted, 0));
+            // 确定性模式下连续加密同一个 class 需要换 Cipher，结果不变
+            assertArrayEquals(clazz, decryptor.maybeDecrypt(encryptor.encrypt(clazz), 0));
+            assertSame(encrypted, new AesDecryptor(gcm, OTHER_KEY).maybeDecrypt(encrypted, 0));
+        }
+        assertSame(clazz, decryptor.maybeDecrypt(clazz, 0));
+    }
+
+    private static byte[] classBytes(int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = (byte) (i * 31);
+        }
+        b[0] = (byte) 0xCA;
+        b[1] = (byte) 0xFE;
+        b[2] = (byte) 0xBA;
+        b[3] = (byte) 0xBE;
+        return b;
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.jsbxyyx.mjar;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * --layers：重建过的 lib jar（含加密的 class）不进 dependencies 层，原样复制的依赖逐字节不变。
+ */
+public class LayersTest {
+    private static final String KEY = "000102030405060708090a0b0c0d0e0f";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Before
+    public void setKey() {
+        System.setProperty(AesEncryptor.KEY_PROPERTY, KEY);
+    }
+
+    @After
+    public void clearKey() {
+        System.clearProperty(AesEncryptor.KEY_PROPERTY);
+    }
+
+    @Test
+    public void rewrittenLibsLeaveDependencies() throws Exception {
+        byte[] thirdParty = jar("org/example/Lib.class", "not encrypted");
+        File source = tmp.newFile("app.jar");
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(source))) {
+            put(zos, "BOOT-INF/classes/com/example/App.class", "app".getBytes(StandardCharsets.UTF_8));
+            putStored(zos, "BOOT-INF/lib/third-party.jar", thirdParty);
+            putStored(zos, "BOOT-INF/lib/app-module.jar", jar("com/example/module/Service.class", "module"));
+        }
+        File layers = tmp.newFolder("layers");
+        Mjarencrypt4.main(new String[]{"com/example", source.getPath(), "--encryptor=aes-gcm",
+                "--log=quiet", "--layers=" + layers.getPath()});
+
+        File dependencies = new File(layers, "dependencies/BOOT-INF/lib");
+        File rewritten = new File(layers, Layers.REWRITTEN + "/BOOT-INF/lib");
+        assertArrayEquals(thirdParty, Files.readAllBytes(new File(dependencies, "third-party.jar").toPath()));
+        assertFalse(new File(dependencies, "app-module.jar").exists());
+        assertTrue(new File(rewritten, "app-module.jar").isFile());
+        assertTrue(new File(layers, "application/BOOT-INF/classes/com/example/App.class").isFile());
+    }
+
+    @Test
+    public void separateFromLayersIndex() throws Exception {
+        Layers layers = Layers.parse(new ByteArrayInputStream((
+                "- \"dependencies\":\n  - \"BOOT-INF/lib/\"\n"
+                        + "- \"application\":\n  - \"BOOT-INF/classes/\"\n").getBytes(StandardCharsets.UTF_8)))
+                .separate(new LinkedHashSet<>(Arrays.asList("BOOT-INF/lib/app-module.jar")));
+        assertEquals("dependencies", layers.layerOf("BOOT-INF/lib/third-party.jar"));
+        assertEquals(Layers.REWRITTEN, layers.layerOf("BOOT-INF/lib/app-module.jar"));
+        assertEquals("application", layers.layerOf("BOOT-INF/classes/com/example/App.class"));
+        assertEquals("- \"dependencies\":\n  - \"BOOT-INF/lib/\"\n"
+                + "- \"" + Layers.REWRITTEN + "\":\n  - \"BOOT-INF/lib/app-module.jar\"\n"
+                + "- \"application\":\n  - \"BOOT-INF/classes/\"\n", layers.toIndex());
+    }
+
+    private static byte[] jar(String name, String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(bytes)) {
+            put(zos, name, content.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void put(ZipOutputStream zos, String name, byte[] data) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(1600000000000L);
+        zos.putNextEntry(entry);
+        zos.write(data);
+        zos.closeEntry();
+    }
+
+    private static void putStored(ZipOutputStream zos, String name, byte[] data) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCrc(crc.getValue());
+        entry.setTime(1600000000000L);
+        zos.putNextEntry(entry);
+        zos.write(data);
+        zos.closeEntry();
+    }
+}
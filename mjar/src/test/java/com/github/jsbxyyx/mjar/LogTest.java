@@ -0,0 +1,46 @@
+package com.github.jsbxyyx.mjar;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Log 写到当前的 System.out：统计行与 print 立即可见，目录树行在 flush 时按写入顺序写出。
+ */
+public class LogTest {
+    private static final String NL = System.lineSeparator();
+
+    private PrintStream original;
+    private ByteArrayOutputStream captured;
+
+    @Before
+    public void redirect() {
+        Log.flush();
+        original = System.out;
+        captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+        Log.setLevel(Log.Level.TREE);
+    }
+
+    @After
+    public void restore() {
+        Log.flush();
+        System.setOut(original);
+    }
+
+    @Test
+    public void followsSystemOut() throws Exception {
+        Log.tree("tree");
+        assertEquals("", captured.toString("UTF-8"));
+        Log.summary("summary");
+        assertEquals("tree" + NL + "summary" + NL, captured.toString("UTF-8"));
+        Log.println("usage");
+        Log.debug("hidden");
+        assertEquals("tree" + NL + "summary" + NL + "usage" + NL, captured.toString("UTF-8"));
+    }
+}
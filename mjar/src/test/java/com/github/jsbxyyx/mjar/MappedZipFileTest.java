@@ -0,0 +1,75 @@
+package com.github.jsbxyyx.mjar;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.ZipFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 条目数超过 65535 时 ZipWriter 写出 ZIP64 的中央目录，MappedZipFile 需要能读回，包括带前置数据的可执行 jar。
+ */
+public class MappedZipFileTest {
+    private static final int COUNT = 70000;
+    private static final long TIME = 1600000000000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void zip64RoundTrip() throws Exception {
+        File jar = write("zip64.jar", new byte[0]);
+        try (ZipFile zf = new ZipFile(jar)) {
+            assertEquals(COUNT, zf.size());
+        }
+        verify(jar);
+    }
+
+    @Test
+    public void zip64WithPrefix() throws Exception {
+        verify(write("exec.jar", "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private File write(String name, byte[] prefix) throws IOException {
+        File file = tmp.newFile(name);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            // ZipWriter 的偏移从 0 开始，前置数据与可执行 jar 一样直接写在前面
+            out.write(prefix);
+            ZipWriter zw = new ZipWriter(out);
+            for (int i = 0; i < COUNT; i++) {
+                zw.write(ZipRecord.of(entryName(i), TIME, content(i), i % 2 == 0 ? 0 : 1));
+            }
+            zw.finish();
+        }
+        return file;
+    }
+
+    private static void verify(File jar) throws IOException {
+        try (MappedZipFile zip = MappedZipFile.open(jar)) {
+            List<MappedZipFile.Entry> entries = zip.entries();
+            assertEquals(COUNT, entries.size());
+            for (int i : new int[]{0, 1, 65534, 65535, 65536, COUNT - 1}) {
+                MappedZipFile.Entry entry = zip.getEntry(entryName(i));
+                assertArrayEquals(content(i), zip.read(entry));
+            }
+        }
+    }
+
+    private static String entryName(int i) {
+        return "com/example/p" + (i / 1000) + "/C" + i + ".class";
+    }
+
+    private static byte[] content(int i) {
+        return ("class " + i).getBytes(StandardCharsets.UTF_8);
+    }
+}
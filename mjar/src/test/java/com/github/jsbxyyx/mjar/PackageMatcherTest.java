@@ -0,0 +1,130 @@
+package com.github.jsbxyyx.mjar;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * glob 编译进同一个 NFA 后，匹配结果与逐条回溯匹配相同，包括跨越多个 long 的规则集。
+ */
+public class PackageMatcherTest {
+
+    @Test
+    public void globSemantics() {
+        PackageMatcher m = PackageMatcher.compile(
+                Arrays.asList("com/example/**", "**/Main.class", "org/?ib/*.class", "**"),
+                Arrays.asList("com/example/dto", "**/package-info.class", "com/example/**/internal/*.class"));
+        assertEquals(1, m.match("com/example/App.class"));
+        assertEquals(-1, m.match("com/example/dto/User.class"));
+        assertEquals(-1, m.match("com/example/package-info.class"));
+        assertEquals(-1, m.match("com/example/a/b/internal/X.class"));
+        assertEquals(1, m.match("com/example/a/b/internal/sub/X.class"));
+        assertEquals(1, m.match("BOOT-INF/classes/com/example/App.class"));
+        assertEquals(1, m.match("org/lib/A.class"));
+        assertEquals(1, m.match("org/lib/a/A.class"));
+        assertEquals(1, m.match("x/y/Main.class"));
+        assertEquals(1, m.match(""));
+        assertEquals(0, PackageMatcher.compile(Collections.singletonList("org/?ib/*.class"),
+                Collections.<String>emptyList()).match("org/lib/a/A.class"));
+    }
+
+    @Test
+    public void sameAsBacktracking() {
+        Random random = new Random(42);
+        String[] parts = {"com", "example", "a", "b", "*", "**", "?", "x?", "*.class", "Main", "ab*c"};
+        for (int round = 0; round < 300; round++) {
+            List<String> includes = new ArrayList<>();
+            List<String> excludes = new ArrayList<>();
+            // 规则数跨过 64 位的边界
+            int rules = 1 + random.nextInt(round % 3 == 0 ? 40 : 4);
+            for (int r = 0; r < rules; r++) {
+                StringBuilder glob = new StringBuilder();
+                for (int k = 1 + random.nextInt(4); k > 0; k--) {
+                    if (glob.length() > 0) glob.append('/');
+                    glob.append(parts[random.nextInt(parts.length)]);
+                }
+                if (glob.indexOf("*") < 0 && glob.indexOf("?") < 0) glob.append("/**");
+                (random.nextBoolean() ? includes : excludes).add(glob.toString());
+            }
+            PackageMatcher m = PackageMatcher.compile(includes, excludes);
+            for (int n = 0; n < 50; n++) {
+                String name = randomName(random);
+                assertEquals(includes + " " + excludes + " " + name, expected(includes, excludes, name), m.match(name));
+            }
+        }
+    }
+
+    private static String randomName(Random random) {
+        String[] segments = {"com", "example", "a", "b", "xy", "abc", "abxc", "Main.class", "A.class", ""};
+        StringBuilder name = new StringBuilder();
+        for (int k = random.nextInt(6); k >= 0; k--) {
+            if (name.length() > 0 || random.nextInt(8) == 0) name.append('/');
+            name.append(segments[random.nextInt(segments.length)]);
+        }
+        return name.toString();
+    }
+
+    private static int expected(List<String> includes, List<String> excludes, String name) {
+        int bestLength = 0;
+        boolean bestExclude = false;
+        for (int pass = 0; pass < 2; pass++) {
+            for (String glob : pass == 0 ? includes : excludes) {
+                int len = Math.max(glob.replace("*", "").replace("?", "").length(), 1);
+                if ((len > bestLength || (len == bestLength && pass == 1 && !bestExclude))
+                        && globMatches(glob.toCharArray(), name)) {
+                    bestLength = len;
+                    bestExclude = pass == 1;
+                }
+            }
+        }
+        return bestLength == 0 ? 0 : bestExclude ? -1 : 1;
+    }
+
+    // 编译为 NFA 之前的回溯匹配，作为对照
+    private static boolean globMatches(char[] glob, String name) {
+        for (int start = 0; start <= name.length(); start++) {
+            if ((start == 0 || name.charAt(start - 1) == '/') && glob(glob, 0, name, start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean glob(char[] glob, int g, String name, int n) {
+        while (g < glob.length) {
+            char ch = glob[g];
+            if (ch == '*') {
+                boolean any = g + 1 < glob.length && glob[g + 1] == '*';
+                g += any ? 2 : 1;
+                if (g == glob.length) {
+                    return any || name.indexOf('/', n) < 0;
+                }
+                for (int i = n; i <= name.length(); i++) {
+                    if (glob(glob, g, name, i)) {
+                        return true;
+                    }
+                    if (i < name.length() && !any && name.charAt(i) == '/') {
+                        return false;
+                    }
+                }
+                return false;
+            }
+            if (n >= name.length()) {
+                return false;
+            }
+            char c = name.charAt(n);
+            if (ch == '?' ? c == '/' : ch != c) {
+                return false;
+            }
+            g++;
+            n++;
+        }
+        return n == name.length();
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.jsbxyyx.mjar;
+
+import com.github.jsbxyyx.mjar.runtime.DecryptCache;
+import org.junit.After;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 补丁使用 new ClassWriter(cr, 0)，max_stack 由手工计算、栈映射帧按原字节复制。
+ * 这里把补丁后的 ClassReader 定义到新的类加载器中（非启动类加载器默认开启字节码校验），
+ * 强制链接后调用构造函数：校验失败会在链接时抛出 VerifyError。
+ * asm 自身的 ClassReader 是 49 版本、没有栈映射帧，因此同时测试改写为 Java 8 版本并计算帧后的副本。
+ */
+public class PatchClassReaderTest {
+    private static final String CLASS_READER = "org/objectweb/asm/ClassReader";
+
+    @After
+    public void resetDecryptor() {
+        DecryptCache.setDecryptor(null);
+    }
+
+    @Test
+    public void nativeCallPassesVerification() throws Exception {
+        for (byte[] original : originals()) {
+            Class<?> patched = define(Mjarencrypt4.patchClassReader(CLASS_READER, original));
+            try {
+                construct(patched, classBytes());
+                fail("native maybeDecrypt is not bound");
+            } catch (UnsatisfiedLinkError expected) {
+                // 通过校验并进入了构造函数开头插入的 maybeDecrypt
+            }
+        }
+    }
+
+    @Test
+    public void decryptsBeforeParsing() throws Exception {
+        for (byte[] original : originals()) {
+            Class<?> patched = define(bindDecrypt(Mjarencrypt4.patchClassReader(CLASS_READER, original)));
+            assertClassName(patched);
+        }
+    }
+
+    @Test
+    public void mergeJarPatchDecryptsBeforeParsing() throws Exception {
+        Method patch = Mjarencrypt2.class.getDeclaredMethod("patchClassReader", String.class, byte[].class);
+        patch.setAccessible(true);
+        for (byte[] original : originals()) {
+            Class<?> patched = define(bindDecrypt((byte[]) patch.invoke(null, CLASS_READER, original)));
+            assertClassName(patched);
+        }
+    }
+
+    @Test
+    public void runtimeCacheDecryptsBeforeParsing() throws Exception {
+        DecryptCache.setDecryptor(PatchClassReaderTest::decrypt);
+        for (byte[] original : originals()) {
+            Class<?> patched = define(Mjarencrypt4.patchClassReader(CLASS_READER, original, true));
+            assertClassName(patched);
+        }
+    }
+
+    /**
+     * 测试用的“解密”：明文 class 原样返回，否则与 0x5A 异或。
+     */
+    public static byte[] decrypt(byte[] b, int off) {
+        if ((b[off] & 0xFF) == 0xCA && (b[off + 1] & 0xFF) == 0xFE) {
+            return b;
+        }
+        return xor(b);
+    }
+
+    private static byte[] xor(byte[] b) {
+        byte[] out = new byte[b.length];
+        for (int i = 0; i < b.length; i++) {
+            out[i] = (byte) (b[i] ^ 0x5A);
+        }
+        return out;
+    }
+
+    private static void assertClassName(Class<?> patched) throws Exception {
+        Object reader = construct(patched, xor(classBytes()));
+        assertEquals(PatchClassReaderTest.class.getName().replace('.', '/'),
+                patched.getMethod("getClassName").invoke(reader));
+    }
+
+    private static Object construct(Class<?> patched, byte[] b) throws Exception {
+        Constructor<?> c = patched.getConstructor(byte[].class);
+        try {
+            return c.newInstance((Object) b);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 在新的类加载器中定义补丁后的 ClassReader 并完成链接（含校验），其余 asm 类也由该加载器重新定义，
+     * 避免与测试 classpath 上的 ClassReader 产生加载器约束冲突。
+     */
+    private static Class<?> define(byte[] patched) throws Exception {
+        ClassLoader loader = new ClassLoader(PatchClassReaderTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (!name.startsWith("org.objectweb.asm.")) {
+                    return super.loadClass(name, resolve);
+                }
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> c = findLoadedClass(name);
+                    if (c == null) {
+                        byte[] b;
+                        try {
+                            b = name.equals(CLASS_READER.replace('/', '.')) ? patched
+                                    : read(getParent(), name.replace('.', '/') + ".class");
+                        } catch (IOException e) {
+                            throw new ClassNotFoundException(name, e);
+                        }
+                        c = defineClass(name, b, 0, b.length);
+                    }
+                    if (resolve) {
+                        resolveClass(c);
+                    }
+                    return c;
+                }
+            }
+        };
+        Class<?> c = Class.forName(CLASS_READER.replace('/', '.'), true, loader);
+        assertTrue(c.getClassLoader() == loader);
+        return c;
+    }
+
+    /**
+     * 补丁后的 ClassReader 原本的字节（49 版本）与改写为 Java 8 版本、带栈映射帧的副本。
+     */
+    private static byte[][] originals() throws IOException {
+        byte[] original = read(PatchClassReaderTest.class.getClassLoader(), CLASS_READER + ".class");
+        ClassReader cr = new ClassReader(original);
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cr.accept(new ClassVisitor(Opcodes.ASM9, cw) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                super.visit(Opcodes.V1_8, access, name, signature, superName, interfaces);
+            }
+        }, 0);
+        byte[] withFrames = cw.toByteArray();
+        assertTrue(new ClassReader(withFrames).readUnsignedShort(6) == Opcodes.V1_8);
+        return new byte[][]{original, withFrames};
+    }
+
+    /**
+     * 把 native maybeDecrypt 换成调用 {@link #decrypt(byte[], int)} 的方法体，使补丁后的构造函数可以实际运行。
+     */
+    private static byte[] bindDecrypt(byte[] patched) {
+        ClassReader cr = new ClassReader(patched);
+        ClassWriter cw = new ClassWriter(cr, 0);
+        cr.accept(new ClassVisitor(Opcodes.ASM9, cw) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+                if ((access & Opcodes.ACC_NATIVE) == 0 || !"maybeDecrypt".equals(name)) {
+                    return super.visitMethod(access, name, desc, signature, exceptions);
+                }
+                MethodVisitor mv = super.visitMethod(access & ~Opcodes.ACC_NATIVE, name, desc, signature, exceptions);
+                mv.visitCode();
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitVarInsn(Opcodes.ILOAD, 1);
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, PatchClassReaderTest.class.getName().replace('.', '/'),
+                        "decrypt", desc, false);
+                mv.visitInsn(Opcodes.ARETURN);
+                mv.visitMaxs(2, 2);
+                mv.visitEnd();
+                return null;
+            }
+        }, 0);
+        return cw.toByteArray();
+    }
+
+    private static byte[] classBytes() throws IOException {
+        return read(PatchClassReaderTest.class.getClassLoader(),
+                PatchClassReaderTest.class.getName().replace('.', '/') + ".class");
+    }
+
+    private static byte[] read(ClassLoader loader, String resource) throws IOException {
+        try (InputStream in = loader.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("resource not found: " + resource);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] b = new byte[8192];
+            int n;
+            while ((n = in.read(b)) != -1) {
+                out.write(b, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.jsbxyyx.mjar;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * --reproducible：同一个归档加密两次、以及内容相同只是条目时间不同的归档，输出的 SHA-256 相同。
+ * 使用 aes-gcm 加密器，它平时使用随机 IV，--reproducible 时换成 {@link Encryptor#deterministic()} 的版本。
+ */
+public class ReproducibleTest {
+    private static final String KEY = "000102030405060708090a0b0c0d0e0f";
+    private static final long TIME = 1600000000000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Before
+    public void setKey() {
+        System.setProperty(AesEncryptor.KEY_PROPERTY, KEY);
+    }
+
+    @After
+    public void clearKey() {
+        System.clearProperty(AesEncryptor.KEY_PROPERTY);
+    }
+
+    @Test
+    public void sameDigestForSameContent() throws Exception {
+        File a = fatJar("a.jar", TIME);
+        // 内容相同，每个条目（包括嵌套 jar 中的条目）的修改时间都不同
+        File b = fatJar("b.jar", TIME + TimeUnit.DAYS.toMillis(400));
+
+        String first = encrypt(a, "--reproducible", "--queue=1");
+        String second = encrypt(a, "--reproducible");
+        String other = encrypt(b, "--reproducible", "--threads=1");
+        assertEquals(first, second);
+        assertEquals(first, other);
+    }
+
+    /**
+     * 不加 --reproducible 时随机 IV 与源归档的时间都会改变输出；之前一次调用的 --reproducible 不能沿用到之后的调用。
+     */
+    @Test
+    public void optionsDoNotLeakIntoLaterRuns() throws Exception {
+        File a = fatJar("a.jar", TIME);
+        String reproducible = encrypt(a, "--reproducible");
+        String plain1 = encrypt(a);
+        String plain2 = encrypt(a);
+        assertNotEquals(reproducible, plain1);
+        assertNotEquals(plain1, plain2);
+    }
+
+    /**
+     * 加密并返回输出归档的 SHA-256，另外启用索引与扫描元数据，使附带的文件也参与比较。
+     */
+    private static String encrypt(File jar, String... options) throws Exception {
+        String[] args = new String[6 + options.length];
+        args[0] = "com/github/jsbxyyx/mjar";
+        args[1] = jar.getPath();
+        args[2] = "--encryptor=aes-gcm";
+        args[3] = "--index";
+        args[4] = "--scan-metadata";
+        args[5] = "--log=quiet";
+        System.arraycopy(options, 0, args, 6, options.length);
+        Mjarencrypt4.main(args);
+        byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(Files.readAllBytes(ArchiveBatch.outputFor(jar).toPath()));
+        return TransformCache.hex(digest);
+    }
+
+    /**
+     * Spring Boot 式的 fat jar：加密的 class、资源、目录条目，以及一个带加密 class 与 asm ClassReader 的嵌套 jar（STORED）。
+     * 每个条目的时间各不相同，且带有扩展时间戳。
+     */
+    private File fatJar(String name, long time) throws IOException {
+        ByteArrayOutputStream nested = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(nested)) {
+            long t = time;
+            put(zos, "com/github/jsbxyyx/mjar/", new byte[0], t += 1000);
+            put(zos, "com/github/jsbxyyx/mjar/PatchClassReaderTest.class", classBytes(PatchClassReaderTest.class), t += 1000);
+            put(zos, "org/objectweb/asm/ClassReader.class", classBytes(org.objectweb.asm.ClassReader.class), t += 1000);
+            put(zos, "lib.properties", "lib=true\n".getBytes("UTF-8"), t += 1000);
+        }
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Start-Class", "com.github.jsbxyyx.mjar.ReproducibleTest");
+        File jar = tmp.newFile(name);
+        try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar))) {
+            long t = time;
+            ZipEntry mf = new ZipEntry("META-INF/MANIFEST.MF");
+            mf.setTime(t);
+            jos.putNextEntry(mf);
+            manifest.write(jos);
+            jos.closeEntry();
+            put(jos, "BOOT-INF/classes/com/github/jsbxyyx/mjar/", new byte[0], t += 2000);
+            put(jos, "BOOT-INF/classes/com/github/jsbxyyx/mjar/ReproducibleTest.class", classBytes(ReproducibleTest.class), t += 2000);
+            put(jos, "BOOT-INF/classes/com/github/jsbxyyx/mjar/Encryptor.class", classBytes(Encryptor.class), t += 2000);
+            put(jos, "BOOT-INF/classes/application.properties", "app=true\n".getBytes("UTF-8"), t += 2000);
+            ZipEntry lib = new ZipEntry("BOOT-INF/lib/lib.jar");
+            byte[] bytes = nested.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            lib.setMethod(ZipEntry.STORED);
+            lib.setSize(bytes.length);
+            lib.setCrc(crc.getValue());
+            lib.setLastModifiedTime(FileTime.fromMillis(t + 2000));
+            jos.putNextEntry(lib);
+            jos.write(bytes);
+            jos.closeEntry();
+        }
+        return jar;
+    }
+
+    private static void put(ZipOutputStream zos, String name, byte[] data, long time) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setLastModifiedTime(FileTime.fromMillis(time));
+        zos.putNextEntry(entry);
+        zos.write(data);
+        zos.closeEntry();
+    }
+
+    private static byte[] classBytes(Class<?> c) throws IOException {
+        try (InputStream in = c.getResourceAsStream(c.getSimpleName() + ".class")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] b = new byte[8192];
+            int n;
+            while ((n = in.read(b)) != -1) {
+                out.write(b, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}